@@ -0,0 +1,366 @@
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.ThreadMXBean;
+
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadInfo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmarks of {@link GameBenchmarks} in the manner of JMH, which cannot be used here as it only accepts
+ * benchmark classes in a named package, and the game's classes are all in the default package.
+ * Every benchmark is run once per parameter: a number of warm up iterations, whose results are discarded, then a
+ * number of measured iterations of a fixed length of time. Each measured iteration records:
+ * <ul>
+ *     <li>the throughput, in operations per second</li>
+ *     <li>the bytes allocated per operation by the threads alive at both ends of the iteration, like the JMH
+ *     gc profiler, and the bytes freed per operation by garbage collections, which include threads that have exited</li>
+ *     <li>the number and time of garbage collections</li>
+ *     <li>the times per operation the benchmark's own threads were blocked on a monitor, or waited on a lock or
+ *     condition, leaving out the runner's thread and the daemon threads of the JVM, which spend their lives waiting</li>
+ * </ul>
+ * The results are printed as a table and saved as JSON, for comparing one build against another.
+ *
+ * Usage: BenchmarkRunner [--warmup=N] [--iterations=N] [--time=MILLIS] [--json=FILE] [name regex]
+ */
+public class BenchmarkRunner {
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // The 99.95% quantiles of Student's t distribution for 1 to 30 degrees of freedom, bounding a two-sided 99.9%
+    // confidence interval as JMH does
+    private static final double[] T_999 = {636.619, 31.599, 12.924, 8.610, 6.869, 5.959, 5.408, 5.041, 4.781, 4.587,
+            4.437, 4.318, 4.221, 4.140, 4.073, 4.015, 3.965, 3.922, 3.883, 3.850,
+            3.819, 3.792, 3.768, 3.745, 3.725, 3.707, 3.690, 3.674, 3.659, 3.646};
+    private static final double Z_999 = 3.2905; // the 99.95% quantile of the normal distribution
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationNanos;
+    private final AtomicLong gcFreedBytes = new AtomicLong();
+
+    /**
+     * Constructs a runner of benchmarks.
+     *
+     * @param warmupIterations The number of iterations run before measuring
+     * @param measuredIterations The number of iterations measured
+     * @param iterationMillis The length of every iteration
+     */
+    public BenchmarkRunner(int warmupIterations, int measuredIterations, long iterationMillis){
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+        THREADS.setThreadContentionMonitoringEnabled(true);
+        NotificationListener listener = (notification, handback) -> {
+            if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                var info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                Map<String, MemoryUsage> before = info.getGcInfo().getMemoryUsageBeforeGc();
+                Map<String, MemoryUsage> after = info.getGcInfo().getMemoryUsageAfterGc();
+                long freed = 0;
+                for (Map.Entry<String, MemoryUsage> pool : before.entrySet()) {
+                    freed += Math.max(0, pool.getValue().getUsed() - after.get(pool.getKey()).getUsed());
+                }
+                gcFreedBytes.addAndGet(freed);
+            }
+        };
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        }
+    }
+
+    /**
+     * Runs a benchmark with every one of its parameters.
+     *
+     * @param benchmark The benchmark to run
+     * @return The result for each parameter, in order
+     * @throws Exception if the benchmark fails
+     */
+    public List<Result> run(GameBenchmarks.Benchmark benchmark) throws Exception {
+        List<Result> results = new ArrayList<>();
+        for (String parameter : benchmark.parameters()) {
+            GameBenchmarks.Trial trial = benchmark.setUp(parameter);
+            try {
+                for (int i = 0; i < warmupIterations; i++) {
+                    trial.iterate(iterationNanos);
+                }
+                Result result = new Result(benchmark.name(), parameter, benchmark.unit());
+                for (int i = 0; i < measuredIterations; i++) {
+                    result.iterations.add(measure(trial));
+                }
+                results.add(result);
+            } finally {
+                trial.tearDown();
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Runs and measures one iteration of a trial.
+     */
+    private Iteration measure(GameBenchmarks.Trial trial) throws Exception {
+        Map<Long, long[]> threadsBefore = sampleThreads();
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        long gcFreedBefore = gcFreedBytes.get();
+
+        long start = System.nanoTime();
+        long operations = trial.iterate(iterationNanos);
+        long nanos = System.nanoTime() - start;
+
+        Map<Long, long[]> threadsAfter = sampleThreads();
+        long[] threadTotals = new long[3];
+        for (Map.Entry<Long, long[]> thread : threadsAfter.entrySet()) {
+            long[] before = threadsBefore.get(thread.getKey());
+            if (before != null) { // threads started during the iteration are counted from zero
+                for (int i = 0; i < threadTotals.length; i++) {
+                    threadTotals[i] += thread.getValue()[i] - before[i];
+                }
+            } else {
+                for (int i = 0; i < threadTotals.length; i++) {
+                    threadTotals[i] += thread.getValue()[i];
+                }
+            }
+        }
+        Iteration iteration = new Iteration();
+        iteration.operations = operations;
+        iteration.nanos = nanos;
+        iteration.allocatedBytes = threadTotals[0];
+        iteration.blockedMillis = threadTotals[1];
+        iteration.waitedMillis = threadTotals[2];
+        iteration.gcCount = gcCount() - gcCountBefore;
+        iteration.gcMillis = gcMillis() - gcMillisBefore;
+        iteration.gcFreedBytes = gcFreedBytes.get() - gcFreedBefore;
+        return iteration;
+    }
+
+    /**
+     * Samples the allocated bytes of every live thread, and the blocked time and waited time of the benchmark's own.
+     */
+    private static Map<Long, long[]> sampleThreads(){
+        long runnerID = Thread.currentThread().getId();
+        long[] ids = THREADS.getAllThreadIds();
+        long[] allocated = THREADS.getThreadAllocatedBytes(ids);
+        ThreadInfo[] infos = THREADS.getThreadInfo(ids);
+        Map<Long, long[]> samples = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (infos[i] != null && allocated[i] >= 0) { // null or -1 once a thread has exited
+                boolean counted = !infos[i].isDaemon() && ids[i] != runnerID;
+                samples.put(ids[i], new long[] {allocated[i], counted ? infos[i].getBlockedTime() : 0,
+                        counted ? infos[i].getWaitedTime() : 0});
+            }
+        }
+        return samples;
+    }
+
+    private static long gcCount(){
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis(){
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Writes results as a JSON document, with one object per benchmark and parameter.
+     *
+     * @param results The results to write
+     * @param file The file to write to, replaced if it exists
+     * @throws IOException if the file cannot be written
+     */
+    public static void writeJson(List<Result> results, Path file) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"timestamp\": \"").append(Instant.now()).append("\",\n");
+        json.append("  \"jvm\": \"").append(System.getProperty("java.vm.name")).append(' ')
+                .append(System.getProperty("java.version")).append("\",\n");
+        json.append("  \"processors\": ").append(Runtime.getRuntime().availableProcessors()).append(",\n");
+        json.append("  \"results\": [");
+        for (int r = 0; r < results.size(); r++) {
+            Result result = results.get(r);
+            json.append(r == 0 ? "\n" : ",\n");
+            json.append("    {\"benchmark\": \"").append(result.benchmark)
+                    .append("\", \"parameter\": \"").append(result.parameter)
+                    .append("\", \"unit\": \"").append(result.unit).append('"');
+            json.append(String.format(Locale.ROOT, ", \"opsPerSecond\": %.3f, \"opsPerSecondError\": %.3f",
+                    result.meanOpsPerSecond(), result.opsPerSecondError()));
+            json.append(String.format(Locale.ROOT, ", \"nsPerOp\": %.3f, \"allocatedBytesPerOp\": %.3f"
+                            + ", \"gcFreedBytesPerOp\": %.3f, \"gcCount\": %d, \"gcMillis\": %d"
+                            + ", \"blockedNsPerOp\": %.3f, \"waitedNsPerOp\": %.3f",
+                    result.nsPerOp(), result.perOp(i -> i.allocatedBytes), result.perOp(i -> i.gcFreedBytes),
+                    result.total(i -> i.gcCount), result.total(i -> i.gcMillis),
+                    result.perOp(i -> i.blockedMillis * 1_000_000), result.perOp(i -> i.waitedMillis * 1_000_000)));
+            json.append(", \"iterations\": [");
+            for (int i = 0; i < result.iterations.size(); i++) {
+                json.append(i == 0 ? "" : ", ").append(String.format(Locale.ROOT, "%.3f",
+                        result.iterations.get(i).opsPerSecond()));
+            }
+            json.append("]}");
+        }
+        json.append("\n  ]\n}\n");
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Files.writeString(file, json);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int warmup = 3;
+        int iterations = 5;
+        long iterationMillis = 1000;
+        Path json = Path.of("target", "bench-results.json");
+        Pattern filter = Pattern.compile(".*");
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value);
+            } else if (arg.startsWith("--iterations=")) {
+                iterations = Integer.parseInt(value);
+            } else if (arg.startsWith("--time=")) {
+                iterationMillis = Long.parseLong(value);
+            } else if (arg.startsWith("--json=")) {
+                json = Path.of(value);
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            } else {
+                filter = Pattern.compile(arg);
+            }
+        }
+
+        BenchmarkRunner runner = new BenchmarkRunner(warmup, iterations, iterationMillis);
+        List<Result> results = new ArrayList<>();
+        System.out.printf("%-22s %-20s %14s %10s %12s %12s %12s %10s %5s%n", "benchmark", "parameter", "ops/s", "error",
+                "ns/op", "alloc B/op", "gc B/op", "wait ns/op", "gcs");
+        for (GameBenchmarks.Benchmark benchmark : GameBenchmarks.ALL) {
+            if (!filter.matcher(benchmark.name()).find()) {
+                continue;
+            }
+            for (Result result : runner.run(benchmark)) {
+                results.add(result);
+                System.out.printf(Locale.ROOT, "%-22s %-20s %14.1f %10.1f %12.1f %12.1f %12.1f %10.1f %5d%n",
+                        result.benchmark, result.parameter, result.meanOpsPerSecond(), result.opsPerSecondError(),
+                        result.nsPerOp(), result.perOp(i -> i.allocatedBytes), result.perOp(i -> i.gcFreedBytes),
+                        result.perOp(i -> (i.blockedMillis + i.waitedMillis) * 1_000_000), result.total(i -> i.gcCount));
+            }
+        }
+        writeJson(results, json);
+        System.out.println("Results saved to " + json);
+    }
+
+    /**
+     * The measurements of one iteration.
+     */
+    private static final class Iteration {
+        long operations;
+        long nanos;
+        long allocatedBytes;
+        long gcFreedBytes;
+        long gcCount;
+        long gcMillis;
+        long blockedMillis;
+        long waitedMillis;
+
+        double opsPerSecond(){
+            return operations * 1e9 / nanos;
+        }
+    }
+
+    /**
+     * The measured iterations of a benchmark with one parameter.
+     */
+    public static final class Result {
+        private final String benchmark;
+        private final String parameter;
+        private final String unit;
+        private final List<Iteration> iterations = new ArrayList<>();
+
+        private Result(String benchmark, String parameter, String unit){
+            this.benchmark = benchmark;
+            this.parameter = parameter;
+            this.unit = unit;
+        }
+
+        double meanOpsPerSecond(){
+            double sum = 0;
+            for (Iteration iteration : iterations) {
+                sum += iteration.opsPerSecond();
+            }
+            return sum / iterations.size();
+        }
+
+        /**
+         * Gets the half width of the 99.9% confidence interval of the throughput, by Student's t distribution for the
+         * number of iterations measured.
+         */
+        double opsPerSecondError(){
+            if (iterations.size() < 2) {
+                return Double.NaN;
+            }
+            double mean = meanOpsPerSecond();
+            double squares = 0;
+            for (Iteration iteration : iterations) {
+                squares += (iteration.opsPerSecond() - mean) * (iteration.opsPerSecond() - mean);
+            }
+            return studentT999(iterations.size() - 1) * Math.sqrt(squares / (iterations.size() - 1) / iterations.size());
+        }
+
+        double nsPerOp(){
+            return perOp(i -> i.nanos);
+        }
+
+        double perOp(Measurement measurement){
+            return (double) total(measurement) / Math.max(1, total(i -> i.operations));
+        }
+
+        long total(Measurement measurement){
+            long total = 0;
+            for (Iteration iteration : iterations) {
+                total += measurement.of(iteration);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Gets the 99.95% quantile of Student's t distribution, from a table for up to 30 degrees of freedom, and beyond
+     * that from the Cornish-Fisher expansion about the normal quantile, which is within 0.01% of it there.
+     *
+     * @param degreesOfFreedom The degrees of freedom, one fewer than the number of iterations
+     * @return The quantile
+     */
+    static double studentT999(int degreesOfFreedom){
+        if (degreesOfFreedom <= T_999.length) {
+            return T_999[degreesOfFreedom - 1];
+        }
+        double v = degreesOfFreedom;
+        double z = Z_999;
+        double z2 = z * z;
+        return z + z * (z2 + 1) / (4 * v)
+                + z * ((5 * z2 + 16) * z2 + 3) / (96 * v * v)
+                + z * (((3 * z2 + 19) * z2 + 17) * z2 - 15) / (384 * v * v * v);
+    }
+
+    private interface Measurement {
+        long of(Iteration iteration);
+    }
+}
@@ -0,0 +1,449 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The benchmarks run by {@link BenchmarkRunner}: the turn loop of each turn locking mode, the deck and hand
+ * operations a turn is made of, loading packs from files, and complete games.
+ */
+public final class GameBenchmarks {
+    private static final String[] TURN_PARAMETERS = {
+            "2/monitor", "4/monitor", "16/monitor", "64/monitor", "128/monitor", "1024/monitor",
+            "2/striped", "4/striped", "16/striped", "64/striped", "128/striped", "1024/striped",
+            "4/monitor/metrics:16", "4/striped/metrics:1", "4/striped/metrics:16", "64/striped/metrics:16",
+            "4/monitor/provenance", "4/striped/provenance", "64/striped/provenance",
+            "4/monitor/log:sync", "4/striped/log:sync", "4/striped/log:async", "4/striped/log:mmap",
+            "4/striped/log:null"};
+
+    /** Every benchmark, in the order they are run. */
+    public static final List<Benchmark> ALL = List.of(
+            new Benchmark("gameplay", "turns", TURN_PARAMETERS, GameBenchmarks::turns),
+            new Benchmark("deck.addDraw", "cards", new String[] {"8", "256"}, GameBenchmarks::deckAddDraw),
+            new Benchmark("player.removeCard", "turns", strategyNames(), GameBenchmarks::playerRemoveCard),
+            new Benchmark("player.checkWin", "checks", new String[] {"win", "no win"}, GameBenchmarks::playerCheckWin),
+            new Benchmark("deal", "games", new String[] {"players/100000", "deal/100000", "players/1000000",
+                    "deal/1000000"}, GameBenchmarks::deal),
+            new Benchmark("loadPackFromFile", "packs", new String[] {"1000", "125000"}, GameBenchmarks::loadPackFromFile),
+            new Benchmark("pack.read", "packs", new String[] {"readLine/1000000", "channel/1000000",
+                    "channel+cards/1000000", "binary/1000000", "mapped/1000000", "readLine/10000000",
+                    "channel/10000000", "binary/10000000", "mapped/10000000"}, GameBenchmarks::packRead),
+            new Benchmark("game", "games", new String[] {"4", "16", "64"}, GameBenchmarks::game));
+
+    private GameBenchmarks(){
+    }
+
+    /**
+     * Players of an unwinnable game, each taking turns on its own thread while an iteration is running. The threads
+     * live for the whole trial, so that their allocation and contention are counted. A third field, metrics:N,
+     * measures the game, timing one turn in N, provenance records every move of every card in a journal, and log:sync
+     * or log:async writes the output files, flushed only on exit, by the players or by the event writer. The players
+     * write log:mmap to a memory mapped log instead, and log:null formats their lines only to discard them.
+     */
+    private static Trial turns(String parameter) throws IOException {
+        String[] fields = parameter.split("/");
+        int numberOfPlayers = Integer.parseInt(fields[0]);
+        CardGame.TurnLocking locking = CardGame.TurnLocking.valueOf(fields[1].toUpperCase());
+        CardGame game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setTurnLocking(locking);
+        game.setNumberOfPlayersFromString(String.valueOf(numberOfPlayers));
+        Path outputDirectory = null;
+        if (fields.length > 2 && fields[2].equals("provenance")) {
+            game.setJournal(new CardJournal(numberOfPlayers));
+        } else if (fields.length > 2 && fields[2].equals("log:null")) {
+            game.setOutputSink(new OutputSink.Null());
+        } else if (fields.length > 2 && fields[2].startsWith("log:")) {
+            outputDirectory = Files.createTempDirectory("output");
+            game.setOutputDirectory(outputDirectory + File.separator);
+            if (fields[2].equals("log:mmap")) {
+                game.setOutputSink(new MappedOutputLog(outputDirectory.resolve("game.log").toString()));
+            }
+            game.setFlushPolicy(GameLog.FlushPolicy.ON_EXIT, 0);
+            game.setAsyncEventLog(fields[2].equals("log:async") ? 4096 : 0, GameEventWriter.Backpressure.BLOCK);
+        } else if (fields.length > 2) {
+            game.setMetrics(new GameMetrics(numberOfPlayers, Integer.parseInt(fields[2].substring("metrics:".length()))));
+        }
+        game.loadPack(unwinnablePack(numberOfPlayers));
+        game.dealCards();
+
+        AtomicLongArray turns = new AtomicLongArray(numberOfPlayers);
+        Thread[] threads = new Thread[numberOfPlayers];
+        State state = new State();
+        Path outputFiles = outputDirectory;
+        for (int i = 0; i < numberOfPlayers; i++) {
+            int player = i;
+            threads[i] = new Thread(() -> {
+                long taken = 0;
+                while (!state.closed) {
+                    if (!state.running) {
+                        Thread.onSpinWait();
+                        Thread.yield();
+                    } else if (locking == CardGame.TurnLocking.STRIPED ? game.stripedGameplay(player) : game.gameplay(player)) {
+                        turns.lazySet(player, ++taken);
+                    }
+                }
+            }, "bench-player" + i);
+            threads[i].start();
+        }
+        return new Trial() {
+            @Override
+            public long iterate(long nanos) throws InterruptedException {
+                long before = sum(turns);
+                state.running = true;
+                Thread.sleep(nanos / 1_000_000);
+                state.running = false;
+                return sum(turns) - before;
+            }
+
+            @Override
+            public void tearDown() throws InterruptedException, IOException {
+                state.closed = true;
+                for (Thread thread : threads) {
+                    while (thread.isAlive()) {
+                        game.wakePlayers(); // Players may be waiting on an empty or full deck
+                        thread.join(10);
+                    }
+                }
+                if (outputFiles != null) {
+                    game.endWithoutWinner();
+                    try (var files = Files.list(outputFiles)) {
+                        for (Path file : files.toList()) {
+                            Files.delete(file);
+                        }
+                    }
+                    Files.delete(outputFiles);
+                }
+            }
+        };
+    }
+
+    /**
+     * A card added to a deck and drawn from it again, on one thread.
+     */
+    private static Trial deckAddDraw(String parameter) {
+        CardDeck deck = new CardDeck(new GameIds(), "deck 1", Integer.parseInt(parameter));
+        return nanos -> {
+            long operations = 0;
+            long sink = 0;
+            long end = System.nanoTime() + nanos;
+            do {
+                for (int i = 0; i < 1024; i++) {
+                    deck.addCard(i);
+                    sink += deck.drawCard();
+                }
+                operations += 1024;
+            } while (System.nanoTime() < end);
+            return sink == -1 ? 0 : operations;
+        };
+    }
+
+    /**
+     * A turn's changes to a hand: a card drawn into it, and one discarded by the given strategy.
+     */
+    private static Trial playerRemoveCard(String parameter) {
+        Player player = new Player(new GameIds(), 4, "Player 1");
+        player.setDiscardStrategy(DiscardStrategy.BuiltIn.valueOf(parameter.toUpperCase()));
+        player.setRandomSeed(42);
+        int[] draws = randomValues(2, 10); // never the preferred value 1, which would fill the hand for good
+        for (int i = 0; i < 4; i++) {
+            player.addCard(draws[i]);
+        }
+        return nanos -> {
+            long operations = 0;
+            long sink = 0;
+            long end = System.nanoTime() + nanos;
+            do {
+                for (int i = 0; i < 1024; i++) {
+                    player.addCard(draws[(int) (operations + i) & (draws.length - 1)]);
+                    sink += player.removeCard();
+                }
+                operations += 1024;
+            } while (System.nanoTime() < end);
+            return sink == -1 ? 0 : operations;
+        };
+    }
+
+    /**
+     * A check for a winning hand, which holds four of a kind or not.
+     */
+    private static Trial playerCheckWin(String parameter) {
+        Player player = new Player(new GameIds(), 4, "Player 1");
+        for (int value : parameter.equals("win") ? new int[] {3, 3, 3, 3} : new int[] {3, 3, 2, 3}) {
+            player.addCard(value);
+        }
+        return nanos -> {
+            long operations = 0;
+            long wins = 0;
+            long end = System.nanoTime() + nanos;
+            do {
+                for (int i = 0; i < 1024; i++) {
+                    wins += player.checkWin() ? 1 : 0;
+                }
+                operations += 1024;
+            } while (System.nanoTime() < end);
+            return wins == -1 ? 0 : operations;
+        };
+    }
+
+    /**
+     * A new game of the given number of players, either only with its players and decks created, or with a pack also
+     * loaded and dealt to them; the difference between the two is the cost of loading and dealing the pack.
+     */
+    private static Trial deal(String parameter) {
+        String[] fields = parameter.split("/");
+        boolean deal = fields[0].equals("deal");
+        int[] pack = BatchSimulator.generatePack(Integer.parseInt(fields[1]), 1);
+        return nanos -> {
+            long operations = 0;
+            long end = System.nanoTime() + nanos;
+            do {
+                CardGame game = new CardGame();
+                game.setOutputDirectory(null);
+                game.setNumberOfPlayersFromString(fields[1]);
+                if (deal) {
+                    game.loadPack(pack);
+                    game.dealCards();
+                }
+                operations++;
+            } while (System.nanoTime() < end);
+            return operations;
+        };
+    }
+
+    /**
+     * A pack file for the given number of players loaded into a new game.
+     */
+    private static Trial loadPackFromFile(String parameter) throws IOException {
+        int numberOfPlayers = Integer.parseInt(parameter);
+        Path pack = Files.createTempFile("pack" + numberOfPlayers, ".txt");
+        StringBuilder lines = new StringBuilder();
+        for (int value : BatchSimulator.generatePack(numberOfPlayers, 1)) {
+            lines.append(value).append('\n');
+        }
+        Files.writeString(pack, lines);
+        return new Trial() {
+            @Override
+            public long iterate(long nanos) throws IOException {
+                long operations = 0;
+                long end = System.nanoTime() + nanos;
+                do {
+                    CardGame game = new CardGame();
+                    game.setNumberOfPlayersFromString(parameter);
+                    game.loadPackFromFile(pack.toString());
+                    operations++;
+                } while (System.nanoTime() < end);
+                return operations;
+            }
+
+            @Override
+            public void tearDown() throws IOException {
+                Files.delete(pack);
+            }
+        };
+    }
+
+    /**
+     * A pack file of the given number of lines read into memory: line by line into a list of cards, as packs were
+     * loaded before they were parsed straight from a file channel, by the pack reader alone, or by the pack reader
+     * followed by the list of cards games kept before they dealt from the values; or a binary pack of as many cards,
+     * read onto the heap or mapped and summed in place.
+     */
+    private static Trial packRead(String parameter) throws IOException {
+        String[] fields = parameter.split("/");
+        String reader = fields[0];
+        int lines = Integer.parseInt(fields[1]);
+        boolean binary = reader.equals("binary") || reader.equals("mapped");
+        Path pack = Files.createTempFile("pack" + lines, binary ? BinaryPack.EXTENSION : ".txt");
+        if (binary) {
+            BinaryPack.write(BatchSimulator.generatePack(lines / 8, 1), lines / 8, pack.toString());
+        } else {
+            try (var writer = Files.newBufferedWriter(pack)) {
+                for (int value : BatchSimulator.generatePack(lines / 8, 1)) {
+                    writer.write(value + "\r\n"); // the line breaks of the packs in the repository
+                }
+            }
+        }
+        return new Trial() {
+            @Override
+            public long iterate(long nanos) throws IOException {
+                long operations = 0;
+                long end = System.nanoTime() + nanos;
+                do {
+                    long cards = switch (reader) {
+                        case "readLine" -> readLines(pack.toString()).size();
+                        case "channel" -> PackReader.read(pack.toString(), lines).length;
+                        case "binary" -> BinaryPack.read(pack.toString(), lines).length;
+                        case "mapped" -> {
+                            BinaryPack mapped = BinaryPack.map(pack.toString());
+                            mapped.checkRules(lines);
+                            long sum = 0;
+                            for (int i = 0; i < mapped.getCardCount(); i++) {
+                                sum += mapped.getValue(i);
+                            }
+                            yield sum >= 0 ? mapped.getCardCount() : 0;
+                        }
+                        default -> {
+                            LinkedList<Card> list = new LinkedList<>();
+                            for (int value : PackReader.read(pack.toString(), lines)) {
+                                list.add(Card.of(value));
+                            }
+                            yield list.size();
+                        }
+                    };
+                    operations += cards == lines ? 1 : 0;
+                } while (System.nanoTime() < end);
+                return operations;
+            }
+
+            @Override
+            public void tearDown() throws IOException {
+                Files.delete(pack);
+            }
+        };
+    }
+
+    /**
+     * Reads a pack as it was read before the pack reader, one line and one card at a time.
+     */
+    private static LinkedList<Card> readLines(String filePath) throws IOException {
+        LinkedList<Card> cards = new LinkedList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String stringCard;
+            while ((stringCard = reader.readLine()) != null) {
+                int cardValue = Integer.parseInt(stringCard);
+                if (cardValue < 0) {
+                    throw new NumberFormatException();
+                }
+                cards.add(Card.of(cardValue));
+            }
+        }
+        return cards;
+    }
+
+    /**
+     * A complete game, from an empty game to its winner, on a new random pack each time.
+     */
+    private static Trial game(String parameter) {
+        int numberOfPlayers = Integer.parseInt(parameter);
+        long[] seed = {0};
+        return nanos -> {
+            long operations = 0;
+            long end = System.nanoTime() + nanos;
+            do {
+                CardGame game = new CardGame();
+                game.setOutputDirectory(null);
+                game.setQuiet(true);
+                game.setNumberOfPlayersFromString(parameter);
+                game.setRandomSeed(seed[0]);
+                game.loadPack(BatchSimulator.generatePack(numberOfPlayers, seed[0]++));
+                game.dealCards();
+                game.play();
+                operations++;
+            } while (System.nanoTime() < end);
+            return operations;
+        };
+    }
+
+    private static String[] strategyNames(){
+        DiscardStrategy.BuiltIn[] strategies = DiscardStrategy.BuiltIn.values();
+        String[] names = new String[strategies.length];
+        for (int i = 0; i < strategies.length; i++) {
+            names[i] = strategies[i].name().toLowerCase();
+        }
+        return names;
+    }
+
+    /**
+     * Gets a pack of distinct values, so that no player can ever hold four of a kind.
+     */
+    private static int[] unwinnablePack(int numberOfPlayers){
+        int[] pack = new int[8 * numberOfPlayers];
+        for (int i = 0; i < pack.length; i++) {
+            pack[i] = i;
+        }
+        return pack;
+    }
+
+    /**
+     * Gets a power of two number of random values from a range.
+     */
+    private static int[] randomValues(int from, int to){
+        var random = new SplittableRandom(42);
+        int[] values = new int[1 << 16];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextInt(from, to);
+        }
+        return values;
+    }
+
+    private static long sum(AtomicLongArray counts){
+        long sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            sum += counts.get(i);
+        }
+        return sum;
+    }
+
+    private static final class State {
+        volatile boolean running;
+        volatile boolean closed;
+    }
+
+    /**
+     * A benchmark, run once for each of its parameters.
+     *
+     * @param name The name of the benchmark
+     * @param unit What one operation of the benchmark is
+     * @param parameters The parameters the benchmark is run with
+     * @param trials Sets up a trial of the benchmark for a parameter
+     */
+    public record Benchmark(String name, String unit, String[] parameters, SetUp trials) {
+        /**
+         * Sets up a trial of the benchmark, run for all its iterations.
+         *
+         * @param parameter The parameter of the trial
+         * @return The trial
+         * @throws Exception if the trial cannot be set up
+         */
+        public Trial setUp(String parameter) throws Exception {
+            return trials.of(parameter);
+        }
+    }
+
+    /**
+     * Sets up a trial of a benchmark for a parameter.
+     */
+    public interface SetUp {
+        Trial of(String parameter) throws Exception;
+    }
+
+    /**
+     * The state of a benchmark with one parameter, iterated over repeatedly.
+     */
+    public interface Trial {
+        /**
+         * Runs the benchmark for about the given time.
+         *
+         * @param nanos The time to run for
+         * @return The number of operations completed
+         * @throws Exception if the benchmark fails
+         */
+        long iterate(long nanos) throws Exception;
+
+        /**
+         * Releases the resources of the trial once all its iterations are done.
+         *
+         * @throws Exception if the resources cannot be released
+         */
+        default void tearDown() throws Exception {
+        }
+    }
+}
@@ -0,0 +1,96 @@
+import com.sun.management.ThreadMXBean;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Measures the hand operations of a player's turn on a single thread: drawing a card into the hand, discarding one,
+ * and checking for a win, with each built-in discard strategy, as well as formatting the hand for the output files.
+ * Reports the mean time and the bytes allocated per operation, then the distribution of the time of single turns.
+ *
+ * Usage: PlayerBenchmark [operations per round]
+ */
+public class PlayerBenchmark {
+    private static final int DEFAULT_OPERATIONS = 5_000_000;
+    private static final int ROUNDS = 5;
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9, 99.99};
+    private static final ThreadMXBean THREADS = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_OPERATIONS;
+        int[] draws = new int[1 << 16];
+        SplittableRandom random = new SplittableRandom(42);
+        for (int i = 0; i < draws.length; i++) {
+            draws[i] = 2 + random.nextInt(8); // never the preferred value 1, which would fill the hand for good
+        }
+
+        Player player = new Player(new GameIds(), 4, "Player 1");
+        for (int i = 0; i < 4; i++) {
+            player.addCard(draws[i]);
+        }
+
+        System.out.printf("%-24s %10s %12s%n", "operation", "ns/op", "bytes/op");
+        for (int round = 0; round < ROUNDS; round++) { // the first rounds warm up
+            boolean report = round == ROUNDS - 1;
+            for (DiscardStrategy.BuiltIn strategy : DiscardStrategy.BuiltIn.values()) {
+                player.setDiscardStrategy(strategy);
+                measure("turn " + strategy.name().toLowerCase(), report, operations, () -> {
+                    int wins = 0;
+                    for (int i = 0; i < operations; i++) {
+                        player.addCard(draws[i & (draws.length - 1)]);
+                        player.removeCard();
+                        if (player.checkWin()) {
+                            wins++;
+                        }
+                    }
+                    return wins;
+                });
+            }
+            measure("handAsString", report, operations, () -> {
+                int length = 0;
+                for (int i = 0; i < operations; i++) {
+                    length += player.getHandAsString().length();
+                }
+                return length;
+            });
+        }
+
+        // Times every turn on its own, which includes the cost of reading the clock
+        player.setDiscardStrategy(DiscardStrategy.BuiltIn.RANDOM);
+        long[] latencies = new long[operations];
+        for (int i = 0; i < operations; i++) {
+            long start = System.nanoTime();
+            player.addCard(draws[i & (draws.length - 1)]);
+            player.removeCard();
+            player.checkWin();
+            latencies[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(latencies);
+        System.out.printf("%nturn random latency (ns):");
+        for (double percentile : PERCENTILES) {
+            System.out.printf(" p%s=%d", percentile % 1 == 0 ? String.valueOf((int) percentile) : String.valueOf(percentile), latencies[(int) (operations * percentile / 100)]);
+        }
+        System.out.printf(" max=%d%n", latencies[operations - 1]);
+    }
+
+    /**
+     * Runs a measured block of operations, printing its cost per operation when asked to report.
+     */
+    private static void measure(String name, boolean report, int operations, Operations block) {
+        long threadID = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadID);
+        long start = System.nanoTime();
+        long sink = block.run();
+        long nanos = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadID) - allocatedBefore;
+        if (report) {
+            System.out.printf("%-24s %10.1f %12.1f%s%n", name, (double) nanos / operations,
+                    (double) allocated / operations, sink == 42 ? " " : "");
+        }
+    }
+
+    private interface Operations {
+        long run();
+    }
+}
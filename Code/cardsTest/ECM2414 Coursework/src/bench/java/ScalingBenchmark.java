@@ -0,0 +1,187 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the threads players can run on as the number of players grows, from a few to a hundred thousand.
+ * Every game is played on a pack nobody can win, in a fresh JVM so that the memory of one game does not count
+ * against the next, and reports:
+ * <ul>
+ *     <li>the startup time, from starting the game until every player has taken a turn</li>
+ *     <li>the growth of the resident memory of the process and of the live heap, once every player has started</li>
+ *     <li>the turns taken per second once every player has started</li>
+ *     <li>the time taken for every player to exit once the game is ended</li>
+ * </ul>
+ * A game that cannot start all its players, as when the system runs out of platform threads, reports why instead,
+ * and a game that has not finished within the timeout is killed.
+ *
+ * Usage: ScalingBenchmark [--window=MILLIS] [--timeout=SECONDS] [--locking=monitor] [--threads=platform,virtual,pool:N]
+ *                         [player counts...]
+ */
+public class ScalingBenchmark {
+    private static final int[] DEFAULT_PLAYER_COUNTS = {4, 100, 1_000, 10_000, 100_000};
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--fork")) { // a single game, run in the child JVM
+            System.out.println(playOnce(args[1], Integer.parseInt(args[2]),
+                    CardGame.TurnLocking.valueOf(args[3]), Long.parseLong(args[4])));
+            return;
+        }
+
+        long windowMillis = 2000;
+        long timeoutSeconds = 120;
+        String locking = "STRIPED";
+        String[] threads = {"platform", "virtual", "pool:" + Runtime.getRuntime().availableProcessors()};
+        List<Integer> playerCounts = new ArrayList<>();
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--window=")) {
+                windowMillis = Long.parseLong(value);
+            } else if (arg.startsWith("--timeout=")) {
+                timeoutSeconds = Long.parseLong(value);
+            } else if (arg.startsWith("--locking=")) {
+                locking = value.toUpperCase();
+            } else if (arg.startsWith("--threads=")) {
+                threads = value.split(",");
+            } else {
+                playerCounts.add(Integer.parseInt(arg));
+            }
+        }
+        if (playerCounts.isEmpty()) {
+            for (int count : DEFAULT_PLAYER_COUNTS) {
+                playerCounts.add(count);
+            }
+        }
+
+        System.out.printf("%-10s %8s %12s %10s %10s %14s %12s%n", "threads", "players", "startup ms",
+                "rss MB", "heap MB", "turns/s", "exit ms");
+        String java = ProcessHandle.current().info().command().orElse("java");
+        for (String thread : threads) {
+            if (thread.equalsIgnoreCase("virtual") && !CardGame.hasVirtualThreads()) {
+                System.out.printf("%-10s %8s not run: virtual threads need Java 21, this is Java %d%n", thread, "-",
+                        Runtime.version().feature());
+                continue;
+            }
+            for (int numberOfPlayers : playerCounts) {
+                Process child = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                        ScalingBenchmark.class.getName(), "--fork", thread, String.valueOf(numberOfPlayers),
+                        locking, String.valueOf(windowMillis)).redirectErrorStream(true).start();
+                String[] result = {"no result"};
+                Thread reader = new Thread(() -> {
+                    try (BufferedReader output = new BufferedReader(new InputStreamReader(child.getInputStream()))) {
+                        String line;
+                        while ((line = output.readLine()) != null) {
+                            result[0] = line; // the game prints its result last
+                        }
+                    } catch (IOException e) { // Caught once the child is killed
+                    }
+                });
+                reader.start();
+                if (!child.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+                    child.destroyForcibly().waitFor();
+                    result[0] = "timed out after " + timeoutSeconds + " s";
+                }
+                reader.join();
+                System.out.printf("%-10s %8d %s%n", thread, numberOfPlayers, result[0]);
+            }
+        }
+    }
+
+    /**
+     * Plays an unwinnable game until every player has started and taken turns for the window, then ends it.
+     *
+     * @return The measurements of the game, as a row of the results table
+     */
+    private static String playOnce(String threads, int numberOfPlayers, CardGame.TurnLocking locking,
+                                   long windowMillis) throws Exception {
+        CardGame game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setTurnLocking(locking);
+        if (threads.startsWith("pool:")) {
+            game.setPlayerThreads(CardGame.PlayerThreads.POOLED, Integer.parseInt(threads.substring("pool:".length())));
+        } else {
+            game.setPlayerThreads(CardGame.PlayerThreads.valueOf(threads.toUpperCase()), 0);
+        }
+        game.setNumberOfPlayersFromString(String.valueOf(numberOfPlayers));
+        int[] pack = new int[8 * numberOfPlayers];
+        for (int i = 0; i < pack.length; i++) {
+            pack[i] = i; // no value appears four times
+        }
+        game.loadPack(pack);
+        game.dealCards();
+
+        long rssBefore = residentBytes();
+        long heapBefore = liveHeapBytes();
+        Throwable[] failure = new Throwable[1];
+        Thread playing = new Thread(() -> {
+            try {
+                game.play();
+            } catch (Throwable e) {
+                failure[0] = e;
+            }
+        }, "play");
+        long start = System.nanoTime();
+        playing.start();
+        List<Player> players = game.getPlayers();
+        int waitingFor = 0;
+        while (waitingFor < numberOfPlayers && playing.isAlive()) { // players who have taken a turn stay counted
+            if (players.get(waitingFor).getTurnsTaken() > 0) {
+                waitingFor++;
+            } else {
+                Thread.sleep(1);
+            }
+        }
+        long startupNanos = System.nanoTime() - start;
+        if (!playing.isAlive()) {
+            return "failed: " + failure[0];
+        }
+
+        long rss = residentBytes() - rssBefore;
+        long heap = liveHeapBytes() - heapBefore;
+        long turnsBefore = game.getTurnsTaken();
+        long windowStart = System.nanoTime();
+        Thread.sleep(windowMillis);
+        double turnsPerSecond = (game.getTurnsTaken() - turnsBefore) * 1e9 / (System.nanoTime() - windowStart);
+
+        long end = System.nanoTime();
+        game.endWithoutWinner();
+        playing.join();
+        long exitNanos = System.nanoTime() - end;
+        return String.format("%12.1f %10.1f %10.1f %14.0f %12.1f", startupNanos / 1e6, rss / 1048576.0,
+                heap / 1048576.0, turnsPerSecond, exitNanos / 1e6);
+    }
+
+    /**
+     * Gets the resident memory of the process, which includes the stacks of platform threads, from Linux's proc
+     * file system.
+     *
+     * @return The resident bytes, or 0 where proc is not available
+     */
+    private static long residentBytes() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return 0;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the heap used once garbage has been collected, which includes the stacks of virtual threads.
+     */
+    private static long liveHeapBytes(){
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
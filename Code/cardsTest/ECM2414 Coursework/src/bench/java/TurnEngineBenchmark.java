@@ -0,0 +1,151 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures how many turns per second the game sustains under each turn locking mode, as the number of players grows,
+ * with players writing their own events or publishing them to the background event writer. The mean time of a turn
+ * is the time its locks are held, plus the time waiting for them. On Linux, the context switches of the process per
+ * turn are counted too, from the proc file system.
+ * Every player thread takes turns for a fixed window of time, on a pack in which no value appears four times, so
+ * that nobody can win and end the measurement early.
+ *
+ * Usage: TurnEngineBenchmark [window millis] [player counts...]
+ */
+public class TurnEngineBenchmark {
+    private static final int DEFAULT_WINDOW_MILLIS = 2000;
+    private static final int[] DEFAULT_PLAYER_COUNTS = {2, 4, 16, 64, 128};
+    private static final int EVENT_QUEUE_CAPACITY = 4096;
+
+    public static void main(String[] args) throws Exception {
+        int windowMillis = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_WINDOW_MILLIS;
+        int[] playerCounts = DEFAULT_PLAYER_COUNTS;
+        if (args.length > 1) {
+            playerCounts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                playerCounts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%-8s %-8s %-6s %14s %14s %14s%n", "players", "locking", "log", "turns/s", "mean turn ns",
+                "switches/turn");
+        for (int numberOfPlayers : playerCounts) {
+            Path pack = writeUnwinnablePack(numberOfPlayers);
+            for (CardGame.TurnLocking locking : CardGame.TurnLocking.values()) {
+                for (int eventQueueCapacity : new int[] {0, EVENT_QUEUE_CAPACITY}) {
+                    playFor(pack, numberOfPlayers, locking, eventQueueCapacity, windowMillis / 4); // warm up
+                    long[] result = playFor(pack, numberOfPlayers, locking, eventQueueCapacity, windowMillis);
+                    System.out.printf("%-8d %-8s %-6s %14.0f %14d %14.2f%n", numberOfPlayers, locking,
+                            eventQueueCapacity == 0 ? "sync" : "async", result[0] * 1000.0 / windowMillis,
+                            result[1] / Math.max(1, result[0]), (double) result[2] / Math.max(1, result[0]));
+                }
+            }
+            Files.delete(pack);
+        }
+    }
+
+    /**
+     * Plays a fresh game with every player on its own thread for the given time.
+     *
+     * @return The total number of turns taken by all players, the total nanoseconds those turns took, and the
+     *         context switches of the process while the players were taking them
+     */
+    private static long[] playFor(Path pack, int numberOfPlayers, CardGame.TurnLocking locking,
+                                  int eventQueueCapacity, int millis) throws InterruptedException, IOException {
+        CardGame game = new CardGame();
+        game.setTurnLocking(locking);
+        game.setAsyncEventLog(eventQueueCapacity, GameEventWriter.Backpressure.BLOCK);
+        game.setup(String.valueOf(numberOfPlayers), pack.toString(), true);
+        game.dealCards();
+
+        long[] turns = new long[numberOfPlayers];
+        long[] turnNanos = new long[numberOfPlayers];
+        List<Thread> threads = new ArrayList<>();
+        Stop stop = new Stop();
+        for (int i = 0; i < numberOfPlayers; i++) {
+            int player = i;
+            Thread thread = new Thread(() -> {
+                long taken = 0;
+                long nanos = 0;
+                while (!stop.requested) {
+                    long start = System.nanoTime();
+                    boolean took = locking == CardGame.TurnLocking.STRIPED
+                            ? game.stripedGameplay(player)
+                            : game.gameplay(player);
+                    if (took) {
+                        nanos += System.nanoTime() - start;
+                        taken++;
+                    }
+                }
+                turns[player] = taken;
+                turnNanos[player] = nanos;
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        long switchesBefore = contextSwitches();
+        Thread.sleep(millis);
+        long switches = contextSwitches() - switchesBefore;
+        stop.requested = true;
+        for (Thread thread : threads) {
+            while (thread.isAlive()) {
+                game.wakePlayers(); // Players may be waiting on an empty or full deck
+                thread.join(10);
+            }
+        }
+
+        long[] total = {0, 0, switches};
+        for (int i = 0; i < numberOfPlayers; i++) {
+            total[0] += turns[i];
+            total[1] += turnNanos[i];
+        }
+        return total;
+    }
+
+    /**
+     * Counts the voluntary and involuntary context switches of every live thread of the process.
+     *
+     * @return The number of context switches, or 0 where the proc file system is not available
+     */
+    private static long contextSwitches() throws IOException {
+        Path tasks = Path.of("/proc/self/task");
+        if (!Files.isDirectory(tasks)) {
+            return 0;
+        }
+        long switches = 0;
+        try (Stream<Path> threads = Files.list(tasks)) {
+            for (Path thread : (Iterable<Path>) threads::iterator) {
+                try {
+                    for (String line : Files.readAllLines(thread.resolve("status"))) {
+                        if (line.contains("ctxt_switches:")) { // voluntary and nonvoluntary
+                            switches += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                        }
+                    }
+                } catch (IOException e) { // Caught if the thread exits while it is being read
+                }
+            }
+        }
+        return switches;
+    }
+
+    /**
+     * Writes a pack of distinct values, so that no player can ever hold four of a kind.
+     */
+    private static Path writeUnwinnablePack(int numberOfPlayers) throws IOException {
+        StringBuilder pack = new StringBuilder();
+        for (int i = 0; i < 8 * numberOfPlayers; i++) {
+            pack.append(i).append('\n');
+        }
+        Path file = Files.createTempFile("unwinnable" + numberOfPlayers, ".txt");
+        Files.writeString(file, pack);
+        return file;
+    }
+
+    private static final class Stop {
+        volatile boolean requested;
+    }
+}
@@ -0,0 +1,300 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plays many independent games at once, without console input or output files, and reports on their outcomes.
+ *
+ * Usage: BatchSimulator --players=N --games=G [--parallelism=P] [--packs=DIR | --seed=S [--layout=LAYOUT[:PARAMETER]]]
+ *                      [--locking=monitor]
+ *                      [--strategy=keep_most_frequent] [--engine=deterministic] [--pack-cache=CARDS]
+ */
+public class BatchSimulator {
+    private final int numberOfPlayers;
+    private final int numberOfGames;
+    private final int parallelism;
+    private final List<String> packFiles; // null when packs are generated
+    private final PackGenerator packGenerator;
+    private final long seed;
+    private final CardGame.TurnLocking turnLocking;
+    private final DiscardStrategy discardStrategy;
+    private final boolean deterministic;
+    private final PackCache packCache; // null when every game reads its pack from its file
+
+    /**
+     * Constructs a batch of games.
+     *
+     * @param numberOfPlayers The number of players in every game
+     * @param numberOfGames The number of games to play
+     * @param parallelism The number of games played at the same time
+     * @param packFiles The packs the games are dealt from in turn, or null to generate a pack for each game
+     * @param packGenerator The generator of the pack of each game, when there are no pack files
+     * @param seed The seed of the random packs and discards, game i being dealt the pack generated from seed + i
+     * @param turnLocking The way in which player turns are made atomic
+     * @param discardStrategy The way in which every player chooses their discards
+     * @param deterministic True to play every game on a single thread, in a random order of turns seeded with the
+     *                      seed of the game, rather than with a thread per player
+     * @param packCache The cache the pack files are read through, shared by every game, or null to read them anew
+     *                  for each game
+     * @throws IllegalArgumentException if there are fewer than 1 player, game or game played at a time, or the packs
+     *                                  are generated so that nobody can win
+     */
+    public BatchSimulator(int numberOfPlayers, int numberOfGames, int parallelism, List<String> packFiles,
+                          PackGenerator packGenerator, long seed, CardGame.TurnLocking turnLocking, DiscardStrategy discardStrategy,
+                          boolean deterministic, PackCache packCache){
+        if (numberOfPlayers < 1 || numberOfGames < 1 || parallelism < 1) {
+            throw new IllegalArgumentException("A batch needs at least 1 player, 1 game and 1 game played at a time, not "
+                    + numberOfPlayers + ", " + numberOfGames + " and " + parallelism);
+        }
+        this.numberOfPlayers = numberOfPlayers;
+        this.numberOfGames = numberOfGames;
+        this.parallelism = parallelism;
+        this.packFiles = packFiles;
+        this.packGenerator = packGenerator;
+        if (packFiles == null && packGenerator.getLayout() == PackGenerator.Layout.NEVER_WINNABLE) {
+            throw new IllegalArgumentException("Games dealt packs nobody can win would never end");
+        }
+        this.seed = seed;
+        this.turnLocking = turnLocking;
+        this.discardStrategy = discardStrategy;
+        this.deterministic = deterministic;
+        this.packCache = packCache;
+    }
+
+    /**
+     * Plays every game of the batch.
+     *
+     * @return The statistics of the games played
+     * @throws InterruptedException if interrupted while waiting for the games to finish
+     * @throws ExecutionException if any game could not be set up or played
+     */
+    public Statistics run() throws InterruptedException, ExecutionException {
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            long start = System.nanoTime();
+            List<Future<long[]>> results = new ArrayList<>(numberOfGames);
+            for (int i = 0; i < numberOfGames; i++) {
+                int game = i;
+                results.add(pool.submit(() -> playGame(game)));
+            }
+            Statistics statistics = new Statistics(numberOfPlayers, numberOfGames);
+            for (Future<long[]> result : results) {
+                long[] game = result.get();
+                statistics.addGame((int) game[0], game[1]);
+            }
+            statistics.elapsedNanos = System.nanoTime() - start;
+            statistics.packCache = packFiles != null ? packCache : null;
+            return statistics;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Sets up and plays one game of the batch.
+     *
+     * @param gameIndex The index of the game in the batch (zero-indexed)
+     * @return The index of the winner and the number of turns taken to win
+     */
+    private long[] playGame(int gameIndex) throws IOException, InterruptedException {
+        CardGame game = new CardGame();
+        game.setNumberOfPlayersFromString(String.valueOf(numberOfPlayers));
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setTurnLocking(turnLocking);
+        game.setRandomSeed(seed + gameIndex);
+        game.setDiscardStrategy(discardStrategy);
+        String packFile = packFiles != null ? packFiles.get(gameIndex % packFiles.size()) : null;
+        try {
+            if (packFile != null && packCache != null) {
+                game.loadPackFromCache(packCache, packFile);
+            } else if (packFile != null) {
+                game.loadPackFromFile(packFile);
+            } else {
+                game.loadPack(packGenerator.generate(numberOfPlayers, seed + gameIndex));
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) { // Thrown when the pack breaks the rules
+            throw new IllegalArgumentException("Pack " + packFile + " is not valid for " + numberOfPlayers + " players", e);
+        }
+        game.dealCards();
+        int winner = deterministic
+                ? game.playDeterministic(TurnSchedule.random(numberOfPlayers, seed + gameIndex))
+                : game.play();
+        return new long[] {winner, game.getTurnsTaken()};
+    }
+
+    /**
+     * Generates a pack of uniformly random card values, each one a value a player of the game prefers.
+     *
+     * @param numberOfPlayers The number of players the pack is for
+     * @param seed The seed of the random values
+     * @return The values of the 8 cards per player in the pack
+     */
+    public static int[] generatePack(int numberOfPlayers, long seed){
+        return new PackGenerator(PackGenerator.Layout.UNIFORM).generate(numberOfPlayers, seed);
+    }
+
+    /**
+     * Lists the packs in a directory which can deal a game: every .txt and binary .pack file holding 8 legal card
+     * values per player. The other packs are skipped, saying why, so that one stray file does not stop the batch.
+     *
+     * @param directory The directory holding the packs
+     * @param numberOfPlayers The number of players in every game
+     * @param skipped Where the packs skipped are reported
+     * @return The locations of the packs which can deal a game, in order of their names
+     * @throws IllegalArgumentException if the location is not a directory, or none of its packs can deal a game
+     */
+    public static List<String> packsIn(String directory, int numberOfPlayers, PrintStream skipped){
+        File[] files = new File(directory).listFiles((dir, name) -> name.endsWith(".txt")
+                || name.endsWith(BinaryPack.EXTENSION));
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + directory);
+        }
+        Arrays.sort(files);
+        List<String> packFiles = new ArrayList<>();
+        for (File file : files) {
+            CardGame game = new CardGame();
+            game.setNumberOfPlayersFromString(String.valueOf(numberOfPlayers));
+            try {
+                game.loadPackFromFile(file.getPath());
+                packFiles.add(file.getPath());
+            } catch (IOException | NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                skipped.println("Skipping " + file.getName() + ", not a valid pack for " + numberOfPlayers
+                        + " players: " + (e.getMessage() != null ? e.getMessage() : "an illegal card value"));
+            }
+        }
+        if (packFiles.isEmpty()) {
+            throw new IllegalArgumentException("No pack in " + directory + " is valid for " + numberOfPlayers
+                    + " players");
+        }
+        return packFiles;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numberOfPlayers = 4;
+        int numberOfGames = 1000;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        String packsDirectory = null;
+        PackGenerator packGenerator = new PackGenerator(PackGenerator.Layout.UNIFORM);
+        long seed = 0;
+        CardGame.TurnLocking turnLocking = CardGame.TurnLocking.STRIPED;
+        DiscardStrategy discardStrategy = DiscardStrategy.BuiltIn.RANDOM;
+        boolean deterministic = false;
+        long packCacheCards = 1 << 24;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--players=")) {
+                numberOfPlayers = Integer.parseInt(value);
+            } else if (arg.startsWith("--games=")) {
+                numberOfGames = Integer.parseInt(value);
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(value);
+            } else if (arg.startsWith("--packs=")) { // every valid .txt and binary .pack file in the directory
+                packsDirectory = value;
+            } else if (arg.startsWith("--layout=")) { // e.g. --layout=skewed:1.5, see PackGenerator.Layout
+                packGenerator = PackGenerator.parse(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--locking=")) {
+                turnLocking = CardGame.TurnLocking.valueOf(value.toUpperCase());
+            } else if (arg.startsWith("--strategy=")) {
+                discardStrategy = DiscardStrategy.BuiltIn.valueOf(value.toUpperCase());
+            } else if (arg.startsWith("--engine=")) { // --engine=threads or --engine=deterministic
+                deterministic = value.equalsIgnoreCase("deterministic");
+            } else if (arg.startsWith("--pack-cache=")) { // the most cards cached across the packs, 0 to read every time
+                packCacheCards = Long.parseLong(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        // Checked once every option is known, before any game starts
+        List<String> packFiles = packsDirectory != null ? packsIn(packsDirectory, numberOfPlayers, System.err) : null;
+        BatchSimulator batch = new BatchSimulator(numberOfPlayers, numberOfGames, parallelism, packFiles, packGenerator, seed,
+                turnLocking, discardStrategy, deterministic, packCacheCards > 0 ? new PackCache(packCacheCards) : null);
+        System.out.print(batch.run());
+    }
+
+    /**
+     * The aggregated outcomes of the games of a batch.
+     */
+    public static class Statistics {
+        private final int[] wins;
+        private final long[] turnsToWin;
+        private int gamesAdded = 0;
+        private long elapsedNanos;
+        private PackCache packCache; // null unless the packs were read through a cache
+
+        private Statistics(int numberOfPlayers, int numberOfGames){
+            this.wins = new int[numberOfPlayers];
+            this.turnsToWin = new long[numberOfGames];
+        }
+
+        private void addGame(int winner, long turns){
+            wins[winner]++;
+            turnsToWin[gamesAdded++] = turns;
+        }
+
+        /**
+         * Gets the number of games won by each player.
+         *
+         * @return The number of wins, indexed by player (zero-indexed)
+         */
+        public int[] getWins(){
+            return wins.clone();
+        }
+
+        /**
+         * Gets the number of games played per second of the batch.
+         *
+         * @return The rate at which games were played
+         */
+        public double getGamesPerSecond(){
+            return gamesAdded * 1e9 / elapsedNanos;
+        }
+
+        /**
+         * Gets the summary of the batch, as printed by the simulator.
+         *
+         * @return The statistics, one per line
+         */
+        @Override
+        public String toString(){
+            if (gamesAdded == 0) { // there are no turns or wins to summarise
+                return String.format("Games played: 0%n");
+            }
+            long[] sorted = turnsToWin.clone();
+            Arrays.sort(sorted);
+            long total = 0;
+            int wonOnDeal = 0;
+            for (long turns : sorted) {
+                total += turns;
+                if (turns == 0) {
+                    wonOnDeal++;
+                }
+            }
+            StringBuilder summary = new StringBuilder();
+            summary.append(String.format("Games played: %d in %.2f s (%.1f games/s)%n",
+                    gamesAdded, elapsedNanos / 1e9, getGamesPerSecond()));
+            summary.append(String.format("Won on the deal: %d%n", wonOnDeal));
+            summary.append(String.format("Turns to win: mean %.1f, median %d, p95 %d, max %d%n",
+                    (double) total / gamesAdded, sorted[gamesAdded / 2],
+                    sorted[(int) (gamesAdded * 0.95)], sorted[gamesAdded - 1]));
+            if (packCache != null) {
+                summary.append(String.format("Pack cache: %d hits, %d misses, %d evictions%n",
+                        packCache.getHits(), packCache.getMisses(), packCache.getEvictions()));
+            }
+            for (int i = 0; i < wins.length; i++) {
+                summary.append(String.format("Player %d wins: %d (%.1f%%)%n", i + 1, wins[i], 100.0 * wins[i] / gamesAdded));
+            }
+            return summary.toString();
+        }
+    }
+}
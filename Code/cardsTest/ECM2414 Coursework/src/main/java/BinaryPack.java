@@ -0,0 +1,391 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+/**
+ * A pack stored in a compact binary form, which can be checked against the rules of a game from its header alone and
+ * loaded without parsing any text. A binary pack file is a 32 byte header followed by the values of the cards:
+ * <pre>
+ *   offset  bytes  field
+ *        0      4  magic, the ASCII characters "CPAK"
+ *        4      2  format version, currently 1
+ *        6      1  bytes per card value: 1, 2 or 4
+ *        7      1  reserved, 0
+ *        8      4  number of players the pack is for
+ *       12      4  number of cards, 8 per player
+ *       16      4  lowest card value
+ *       20      4  highest card value
+ *       24      4  CRC-32C of the card values
+ *       28      4  reserved, 0
+ *       32         card values, unsigned, from the top of the pack
+ * </pre>
+ * Every number is big-endian, and values take the fewest bytes that hold the highest value, so the packs of the
+ * coursework take a byte per card. A mapped pack reads its values in place, without copying them onto the heap.
+ *
+ * Usage: BinaryPack TEXT_PACK [BINARY_PACK], or BinaryPack DIR to convert every .txt pack in a directory
+ */
+public class BinaryPack {
+    public static final int MAGIC = 0x4350414B; // "CPAK"
+    public static final short VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final String EXTENSION = ".pack";
+
+    private final String filePath;
+    private ByteBuffer values; // only the values, read or mapped from the file, null until read
+    private final int valueBytes;
+    private final int numberOfPlayers;
+    private final int cardCount;
+    private final int minValue;
+    private final int maxValue;
+    private final int checksum;
+
+    /**
+     * Constructs a pack from its header, checking the header describes a well formed pack.
+     *
+     * @param filePath The location of the pack file, for error messages
+     * @param header The header of the file, positioned at its start
+     * @param fileSize The size of the file, which must hold exactly the values the header describes
+     * @param values The values of the cards, or null if they have not been read yet
+     * @throws IOException if the file is not a binary pack, or is one of a later version or truncated
+     */
+    private BinaryPack(String filePath, ByteBuffer header, long fileSize, ByteBuffer values) throws IOException {
+        this.filePath = filePath;
+        if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC) {
+            throw new IOException(filePath + " is not a binary pack");
+        }
+        if (header.getShort(4) != VERSION) {
+            throw new IOException(filePath + " is a binary pack of version " + header.getShort(4)
+                    + ", only version " + VERSION + " can be read");
+        }
+        this.valueBytes = header.get(6);
+        this.numberOfPlayers = header.getInt(8);
+        this.cardCount = header.getInt(12);
+        this.minValue = header.getInt(16);
+        this.maxValue = header.getInt(20);
+        this.checksum = header.getInt(24);
+        if ((valueBytes != 1 && valueBytes != 2 && valueBytes != 4) || cardCount < 0 || minValue > maxValue
+                || maxValue > maxValueOf(valueBytes)) {
+            throw new IOException(filePath + " has a corrupt header");
+        }
+        if (fileSize != HEADER_SIZE + (long) cardCount * valueBytes) {
+            throw new IOException(filePath + " is " + fileSize + " bytes, its header describes "
+                    + (HEADER_SIZE + (long) cardCount * valueBytes));
+        }
+        this.values = values;
+    }
+
+    /**
+     * Checks whether a file is a binary pack rather than a text one, from its first four bytes.
+     *
+     * @param filePath The location of the pack file
+     * @return True if the file starts with the magic of a binary pack
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinaryPack(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) != -1) {
+                // a file may be read in more than one go
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the values of the cards in a binary pack, checking it follows the rules of the game from its header
+     * before reading any value, then checking the values against the checksum.
+     *
+     * @param filePath The location of the pack file
+     * @param expectedCards The number of cards the pack must hold, 8 per player
+     * @return The values of the cards, from the top of the pack
+     * @throws IOException if the file cannot be read, is not a binary pack or is corrupt
+     * @throws NumberFormatException if the header gives a negative card value
+     * @throws ArrayIndexOutOfBoundsException if the pack holds more or less than the expected number of cards
+     */
+    public static int[] read(String filePath, int expectedCards)
+            throws IOException, NumberFormatException, ArrayIndexOutOfBoundsException {
+        return readValues(filePath, expectedCards);
+    }
+
+    /**
+     * Reads the values of every card in a binary pack, however many there are, as when caching packs for games of
+     * any number of players.
+     *
+     * @param filePath The location of the pack file
+     * @return The values of the cards, from the top of the pack
+     * @throws IOException if the file cannot be read, is not a binary pack or is corrupt
+     * @throws NumberFormatException if the header gives a negative card value
+     */
+    public static int[] readAll(String filePath) throws IOException, NumberFormatException {
+        return readValues(filePath, -1);
+    }
+
+    private static int[] readValues(String filePath, int expectedCards) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header);
+            BinaryPack pack = new BinaryPack(filePath, header.flip(), channel.size(), null);
+            pack.checkRules(expectedCards < 0 ? pack.cardCount : expectedCards); // any number of cards if negative
+
+            pack.values = ByteBuffer.allocate(byteSize(filePath, pack.cardCount, pack.valueBytes, 0));
+            readFully(channel, pack.values);
+            pack.values.flip();
+            return pack.toArray();
+        }
+    }
+
+    /**
+     * Maps a binary pack into memory, so that its values are read in place from the file. Its header is checked,
+     * but its values are not checked against the checksum until verifyChecksum is called.
+     *
+     * @param filePath The location of the pack file
+     * @return The mapped pack
+     * @throws IOException if the file cannot be read, is not a binary pack or is corrupt
+     */
+    public static BinaryPack map(String filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(filePath + " is " + channel.size() + " bytes, more than can be mapped at once");
+            }
+            ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new BinaryPack(filePath, file, channel.size(), file.slice(Math.min(HEADER_SIZE, file.limit()),
+                    Math.max(file.limit() - HEADER_SIZE, 0)));
+        }
+    }
+
+    /**
+     * Writes a pack in binary form.
+     *
+     * @param values The values of the cards in the pack, from the top of the pack
+     * @param numberOfPlayers The number of players the pack is for
+     * @param filePath The location of the binary pack, replaced if it exists
+     * @throws NumberFormatException if the pack contains a negative card value
+     * @throws IllegalArgumentException if the pack does not hold 8 cards per player
+     */
+    public static void write(int[] values, int numberOfPlayers, String filePath)
+            throws NumberFormatException, IllegalArgumentException {
+        if (values.length != 8 * numberOfPlayers) {
+            throw new IllegalArgumentException("A pack for " + numberOfPlayers + " players needs "
+                    + 8 * numberOfPlayers + " cards, not " + values.length);
+        }
+        int minValue = values.length == 0 ? 0 : Integer.MAX_VALUE;
+        int maxValue = 0;
+        for (int value : values) {
+            if (value < 0) {
+                throw new NumberFormatException("A pack cannot hold the negative card value " + value);
+            }
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+        int valueBytes = maxValue <= maxValueOf(1) ? 1 : maxValue <= maxValueOf(2) ? 2 : 4;
+
+        ByteBuffer file;
+        try {
+            file = ByteBuffer.allocate(byteSize(filePath, values.length, valueBytes, HEADER_SIZE));
+        } catch (IOException e) { // Caught if the pack is too large to be written from a single buffer
+            throw new RuntimeException(e);
+        }
+        file.position(HEADER_SIZE);
+        for (int value : values) {
+            switch (valueBytes) {
+                case 1 -> file.put((byte) value);
+                case 2 -> file.putShort((short) value);
+                default -> file.putInt(value);
+            }
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(file.flip().position(HEADER_SIZE));
+        file.putInt(0, MAGIC).putShort(4, VERSION).put(6, (byte) valueBytes).put(7, (byte) 0)
+                .putInt(8, numberOfPlayers).putInt(12, values.length).putInt(16, minValue).putInt(20, maxValue)
+                .putInt(24, (int) crc.getValue()).putInt(28, 0);
+
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            file.rewind();
+            while (file.hasRemaining()) {
+                channel.write(file);
+            }
+        } catch (IOException e) { // Caught if the file path is not correct
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Converts a text pack, of one card value per line, to a binary pack for as many players as it has cards for.
+     *
+     * @param textFilePath The location of the text pack
+     * @param binaryFilePath The location of the binary pack, replaced if it exists
+     * @throws IOException if the text pack cannot be read
+     * @throws NumberFormatException if a line of the text pack is not a whole number, or is a negative one
+     * @throws IllegalArgumentException if the text pack does not hold 8 cards per player
+     */
+    public static void convert(String textFilePath, String binaryFilePath)
+            throws IOException, NumberFormatException, IllegalArgumentException {
+        int[] values = PackReader.readAll(textFilePath);
+        if (values.length % 8 != 0) {
+            throw new IllegalArgumentException(textFilePath + " has " + values.length
+                    + " cards, which is not 8 per player");
+        }
+        write(values, values.length / 8, binaryFilePath);
+    }
+
+    /**
+     * Checks the pack follows the rules of a game from its header, without reading its values.
+     *
+     * @param expectedCards The number of cards the game needs, 8 per player
+     * @throws NumberFormatException if the header gives a negative card value
+     * @throws ArrayIndexOutOfBoundsException if the pack holds more or less than the expected number of cards
+     */
+    public void checkRules(int expectedCards) throws NumberFormatException, ArrayIndexOutOfBoundsException {
+        if (minValue < 0) {
+            throw new NumberFormatException(filePath + " has the negative card value " + minValue);
+        }
+        if (cardCount != expectedCards) {
+            throw new ArrayIndexOutOfBoundsException(filePath + " has " + cardCount + " cards for "
+                    + numberOfPlayers + " players, the game needs " + expectedCards);
+        }
+    }
+
+    /**
+     * Checks the values of the cards against the checksum in the header.
+     *
+     * @throws IOException if the values do not match the checksum
+     */
+    public void verifyChecksum() throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(values.duplicate().clear());
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException(filePath + " is corrupt, its cards do not match its checksum");
+        }
+    }
+
+    /**
+     * Gets the value of a card, read in place.
+     *
+     * @param index The position of the card from the top of the pack (zero-indexed)
+     * @return The value of the card
+     */
+    public int getValue(int index){
+        Objects.checkIndex(index, cardCount);
+        return switch (valueBytes) {
+            case 1 -> Byte.toUnsignedInt(values.get(index));
+            case 2 -> Short.toUnsignedInt(values.getShort(index * 2));
+            default -> values.getInt(index * 4);
+        };
+    }
+
+    /**
+     * Copies the values of the cards onto the heap, once they have been checked against the checksum, checking each
+     * is within the range of values given by the header.
+     *
+     * @return The values of the cards, from the top of the pack
+     * @throws IOException if the values do not match the checksum, or one is outside the range of the header
+     */
+    public int[] toArray() throws IOException {
+        verifyChecksum();
+        int[] array = new int[cardCount];
+        for (int i = 0; i < cardCount; i++) {
+            int value = getValue(i);
+            // A 4 byte value of 2^31 or more reads as negative, and no card can have a negative value
+            if (value < 0 || value < minValue || value > maxValue) {
+                throw new IOException(filePath + " is corrupt, card " + (i + 1) + " has the value "
+                        + Integer.toUnsignedString(value) + ", outside the range " + minValue + " to " + maxValue
+                        + " of its header");
+            }
+            array[i] = value;
+        }
+        return array;
+    }
+
+    /**
+     * Gets the number of players the pack is for.
+     *
+     * @return The number of players
+     */
+    public int getNumberOfPlayers(){
+        return numberOfPlayers;
+    }
+
+    /**
+     * Gets the number of cards in the pack.
+     *
+     * @return The number of cards
+     */
+    public int getCardCount(){
+        return cardCount;
+    }
+
+    /**
+     * Gets the lowest card value in the pack.
+     *
+     * @return The lowest value
+     */
+    public int getMinValue(){
+        return minValue;
+    }
+
+    /**
+     * Gets the highest card value in the pack.
+     *
+     * @return The highest value
+     */
+    public int getMaxValue(){
+        return maxValue;
+    }
+
+    /**
+     * Gets the size in bytes of the values of a pack, and of any header before them, which must fit in one buffer.
+     *
+     * @param filePath The location of the pack file, for error messages
+     * @param cardCount The number of cards in the pack
+     * @param valueBytes The bytes per card value
+     * @param headerSize The bytes before the values, 0 for the values alone
+     * @return The size in bytes
+     * @throws IOException if the size is more than a buffer can hold
+     */
+    private static int byteSize(String filePath, int cardCount, int valueBytes, int headerSize) throws IOException {
+        try {
+            return Math.addExact(headerSize, Math.multiplyExact(cardCount, valueBytes));
+        } catch (ArithmeticException e) {
+            throw new IOException(filePath + " has " + cardCount + " cards of " + valueBytes
+                    + " bytes, more than a buffer can hold", e);
+        }
+    }
+
+    private static int maxValueOf(int valueBytes){
+        return valueBytes == 4 ? Integer.MAX_VALUE : (1 << (8 * valueBytes)) - 1;
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1) {
+                break; // a short file is reported by the size check of the header
+            }
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        File input = new File(args[0]);
+        if (input.isDirectory()) {
+            File[] packs = Objects.requireNonNull(input.listFiles((dir, name) -> name.endsWith(".txt")));
+            for (File pack : packs) {
+                String binary = pack.getPath().substring(0, pack.getPath().length() - ".txt".length()) + EXTENSION;
+                try {
+                    convert(pack.getPath(), binary);
+                    System.out.println(pack.getPath() + " -> " + binary);
+                } catch (IllegalArgumentException e) { // the invalid packs, of bad values or counts, are left as text
+                    System.out.println(pack.getPath() + " skipped: " + e.getMessage());
+                }
+            }
+        } else {
+            String binary = args.length > 1 ? args[1] : args[0].replaceFirst("(\\.txt)?$", EXTENSION);
+            convert(args[0], binary);
+            System.out.println(args[0] + " -> " + binary);
+        }
+    }
+}
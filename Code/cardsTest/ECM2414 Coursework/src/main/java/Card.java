@@ -1,23 +1,52 @@
-public class Card {
-    private static int numberOfCards = 1;
-    private final int cardID;
-    private int deckID;
-    private int playerID;
+import java.util.Arrays;
+
+/**
+ * A card of a pack. Only the value of a card matters to the game, so cards are flyweights: of interns one shared
+ * instance per value, and two cards of the same value are the same object, however large the pack. Where one card has
+ * to be told apart from the others of its value, as when following it round the table, it is encoded together with
+ * an ID in a single long instead, without any object at all.
+ */
+public final class Card {
+    private static final int MAX_INTERNED_VALUE = (1 << 24) - 1; // far above the values of any pack a game can play
+    private static volatile Card[] interned = new Card[256]; // grown, under the class lock, to fit larger values
+
     private final int value;
 
+    private Card(int value){
+        this.value = value;
+    }
+
     /**
-     * Constructs an instance of the Card class.
+     * Gets the card of a value, the same instance every time for values up to 2^24 - 1.
      *
-     * @param deckID The id of the deck that a card belongs to, -1 if it isn't in a deck
-     * @param playerID The id of the player whose hand the card is in, -1 if it isn't in a hand
      * @param value The value of the card
+     * @return The card
+     * @throws IllegalArgumentException if the value is negative
      */
-    public Card (int deckID,int playerID, int value){
-        this.cardID = numberOfCards;
-        incrementCardID();
-        this.deckID = deckID;
-        this.playerID = playerID;
-        this.value = value;
+    public static Card of(int value){
+        if (value < 0) {
+            throw new IllegalArgumentException("A card cannot have a negative value: " + value);
+        }
+        Card[] cards = interned;
+        if (value < cards.length) {
+            Card card = cards[value]; // safely read without a lock, as the only field of a card is final
+            if (card != null) {
+                return card;
+            }
+        }
+        return value <= MAX_INTERNED_VALUE ? intern(value) : new Card(value);
+    }
+
+    private static synchronized Card intern(int value){
+        Card[] cards = interned;
+        if (value >= cards.length) {
+            cards = Arrays.copyOf(cards, Integer.highestOneBit(value) << 1);
+        }
+        if (cards[value] == null) {
+            cards[value] = new Card(value);
+        }
+        interned = cards;
+        return cards[value];
     }
 
     /**
@@ -30,9 +59,33 @@ public class Card {
     }
 
     /**
-     * Increments the next available id, for the next card.
+     * Encodes a card with an ID telling it apart from the other cards of its value, such as its position in the pack.
+     *
+     * @param cardID The ID of the card
+     * @param value The value of the card
+     * @return The card, the ID in the high 32 bits and the value in the low 32 bits
+     */
+    public static long encode(int cardID, int value){
+        return (long) cardID << 32 | (value & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the ID of an encoded card.
+     *
+     * @param card The card, as encoded by encode
+     * @return The ID of the card
+     */
+    public static int idOf(long card){
+        return (int) (card >>> 32);
+    }
+
+    /**
+     * Gets the value of an encoded card.
+     *
+     * @param card The card, as encoded by encode
+     * @return The value of the card
      */
-    private static void incrementCardID(){
-        numberOfCards++;
+    public static int valueOf(long card){
+        return (int) card;
     }
 }
@@ -1,62 +1,176 @@
 import java.util.LinkedList;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class CardDeck {
-    private static int nextAvailableID = 0;
+    private static final int MIN_CAPACITY = 8;
+    private static final int MAX_CAPACITY = 256;
     private final int deckID;
-    private volatile int numberOfCardsInDeck;
-    private volatile LinkedList<Integer> cards;
+    private final int[] cards; // ring buffer, its length is always a power of two
+    private final int mask;
+    private volatile long head; // position of the next card to draw, only written by the drawing player
+    private volatile long tail; // position of the next card to add, only written by the discarding player
     private final String name;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
 
     /**
-     * Constructs an instance of CardDeck.
+     * Constructs an instance of CardDeck, large enough for any game of up to 64 players.
      *
+     * @param ids The allocator of the IDs of the game the deck is in
      * @param name The name of the deck, used to create a deck output file
      */
-    public CardDeck(String name){
-        this.deckID = nextAvailableID;
-        incrementDeckID();
-        numberOfCardsInDeck = 0;
+    public CardDeck(GameIds ids, String name){
+        this(ids, name, MAX_CAPACITY);
+    }
+
+    /**
+     * Constructs an instance of CardDeck, holding at most the given number of cards.
+     * Each deck has one player drawing from it and one player discarding to it, so cards can be added and drawn
+     * by those two players at the same time without any locking.
+     *
+     * @param ids The allocator of the IDs of the game the deck is in
+     * @param name The name of the deck, used to create a deck output file
+     * @param capacity The most cards the deck can hold, rounded up to a power of two
+     */
+    public CardDeck(GameIds ids, String name, int capacity){
+        this.deckID = ids.nextDeckID();
         this.name = name;
-        this.cards = new LinkedList<>();
+        this.cards = new int[Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1)];
+        this.mask = cards.length - 1;
+    }
 
+    /**
+     * Gets the capacity a deck needs in a game, so that it is never full unless the table is very large.
+     * The decks of a game hold 4 cards for each player in total, so no single deck can hold more than that.
+     *
+     * @param numberOfPlayers The number of players in the game
+     * @return The capacity to give each deck of the game
+     */
+    public static int capacityFor(int numberOfPlayers){
+        return Math.max(MIN_CAPACITY, Math.min(MAX_CAPACITY, 4 * numberOfPlayers));
     }
 
     /**
-     * Gets the cards in a deck.
+     * Gets the cards in a deck, as a copy of the values in the order they will be drawn.
      *
      * @return A LinkedList of the values of the cards in the deck
      */
-    public LinkedList<Integer> getCards() {return this.cards;}
+    public LinkedList<Integer> getCards() {
+        LinkedList<Integer> values = new LinkedList<>();
+        for (long i = head, end = tail; i < end; i++) {
+            values.add(cards[(int) i & mask]);
+        }
+        return values;
+    }
 
     /**
-     * Adds a card to a deck, from the pack.
+     * Appends the cards in a deck to an output line, in the format of getCards().toString(), without boxing the values.
      *
-     * @param newCard The Value of the card to be added to a deck
+     * @param out The buffer of the output line
      */
-    public void addCard(int newCard){
-        cards.add(cards.size(), newCard);
+    public void appendCardsTo(OutputBuffer out){
+        int[] values = new int[size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = cards[(int) (head + i) & mask];
+        }
+        out.appendList(values);
     }
 
     /**
-     * Draws a card from the deck.
+     * Gets the ID of the deck.
      *
-     * @return The card which has been drawn
+     * @return The deck ID
      */
-    public int drawCard(){
-        return cards.pop();
+    public int getDeckID() {return this.deckID;}
+
+    /**
+     * Gets the lock guarding this deck, held by any player drawing from or discarding to it.
+     *
+     * @return The lock of the deck
+     */
+    public ReentrantLock getLock() {return this.lock;}
+
+    /**
+     * Gets the condition of the deck's lock signalled when a card is drawn from or added to the deck under the lock,
+     * awaited by a player who cannot take a turn until the deck has a card or room for one.
+     *
+     * @return The condition of the deck
+     */
+    public Condition getChanged() {return this.changed;}
+
+    /**
+     * Gets the number of cards currently in the deck.
+     *
+     * @return The number of cards in the deck
+     */
+    public int size() {return (int) (tail - head);}
+
+    /**
+     * Checks whether the deck currently has no cards to draw.
+     *
+     * @return True if the deck is empty
+     */
+    public boolean isEmpty() {return head == tail;}
+
+    /**
+     * Checks whether the deck has no room for another card.
+     *
+     * @return True if the deck is full
+     */
+    public boolean isFull() {return tail - head == cards.length;}
+
+    /**
+     * Adds a card to the bottom of the deck. Only called by the single player discarding to this deck.
+     *
+     * @param newCard The Value of the card to be added to a deck
+     * @throws IllegalStateException if the deck is full
+     */
+    public void addCard(int newCard){
+        long position = tail;
+        if (position - head == cards.length) {
+            throw new IllegalStateException(name + " is full");
+        }
+        cards[(int) position & mask] = newCard;
+        tail = position + 1; // publishes the card to the drawing player
     }
 
     /**
-     * Increments the next available id of the deck.
+     * Adds cards dealt from a pack to the bottom of the deck, in the order they are taken from the pack, publishing
+     * them to the drawing player all at once. Only called by the single player discarding to this deck, or before
+     * the game starts.
+     *
+     * @param pack The values of the cards in the pack
+     * @param first The position in the pack of the first card to add
+     * @param stride The distance in the pack between one card to add and the next
+     * @param count The number of cards to add
+     * @throws IllegalStateException if the cards would not fit in the deck
      */
-    private static void incrementDeckID(){
-        nextAvailableID++;
+    public void addCards(int[] pack, int first, int stride, int count){
+        long position = tail;
+        if (position - head + count > cards.length) {
+            throw new IllegalStateException(name + " cannot hold " + count + " more cards");
+        }
+        for (int i = 0; i < count; i++) {
+            cards[(int) (position + i) & mask] = pack[first + i * stride];
+        }
+        tail = position + count;
     }
 
     /**
-     * Resets the Deck IDs in case of a new game being made
+     * Draws a card from the top of the deck. Only called by the single player drawing from this deck.
+     *
+     * @return The card which has been drawn
+     * @throws NoSuchElementException if the deck is empty
      */
-    public static void resetDeckID(){
-        nextAvailableID = 0;
+    public int drawCard(){
+        long position = head;
+        if (position == tail) {
+            throw new NoSuchElementException(name + " is empty");
+        }
+        int card = cards[(int) position & mask];
+        head = position + 1; // frees the slot for the discarding player
+        return card;
     }
 }
@@ -1,34 +1,75 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import jdk.jfr.Recording;
 
 public class CardGame extends Thread{
-    private static final String OUTPUT_DIRECTORY_PATH = "output\\";
+    private static final String OUTPUT_DIRECTORY_PATH = "output" + File.separator;
     private int numberOfPlayers;
-    int winner = -1; // -1 when there is no winner
-    private final LinkedList<Card> cards;
+    int winner = -1; // -1 when there is no winner, set only by the player who claims the win
+    private static final int UNDECIDED = -1;
+    private static final int STOPPED = -2;
+    // The index of the first player to win, or STOPPED if the game was stopped first, latched once decided
+    private final AtomicInteger outcome = new AtomicInteger(UNDECIDED);
+    private static final int TURNS_PER_TASK = 64; // turns a pooled player takes before giving up its pool thread
+    private TurnLocking turnLocking = TurnLocking.STRIPED;
+    private PlayerThreads playerThreads = PlayerThreads.PLATFORM;
+    private int poolSize = Runtime.getRuntime().availableProcessors();
+    // Held for a whole turn under monitor locking, and while the exits of the players are written
+    private final ReentrantLock turnLock = new ReentrantLock();
+    // One per player, signalled when a neighbour's turn has changed a deck the player was waiting on
+    private final ArrayList<Condition> turnPossible = new ArrayList<>();
+    // One per deck, the pooled player parked until a neighbour changes the deck, guarded like the deck itself: by the
+    // turn lock under monitor locking, and by the lock of the deck under striped locking
+    private final ArrayList<PooledPlayer> parkedPlayers = new ArrayList<>();
+    private static final ThreadFactory VIRTUAL_THREADS = virtualThreadFactory(); // null before Java 21
+    private final AtomicInteger exitedPlayers = new AtomicInteger();
+    private GameLog log;
+    private GameLog.FlushPolicy flushPolicy = GameLog.FlushPolicy.EVERY_N_EVENTS;
+    private int eventsPerFlush = 64;
+    private GameEventWriter eventWriter;
+    private int eventQueueCapacity = 0; // 0 when events are written by the players themselves
+    private GameEventWriter.Backpressure backpressure = GameEventWriter.Backpressure.BLOCK;
+    private String outputDirectory = OUTPUT_DIRECTORY_PATH; // null when the game writes no output files
+    private OutputSink outputSink; // null unless the output is written somewhere other than the output directory
+    private boolean quiet = false;
+    private int[] pack; // the values of the cards from the top, dealt in place and never written, null until loaded
+    private int dealPosition = 0; // the position in the pack of the top card not dealt yet
+    private PackGenerator packGenerator; // null unless setup deals a generated pack rather than asking for a file
+    private long packSeed;
     private volatile Boolean isOver = false;
     private final ArrayList<Player> players;
     private final ArrayList<CardDeck> decks;
-    public final String GLOBALPATH = ".\\";
+    public final String GLOBALPATH = "." + File.separator;
     private volatile LinkedList<Integer> allPlayers = new LinkedList<>();
+    private final GameIds ids = new GameIds();
+    private Long randomSeed; // null until the players are seeded
+    private TurnSchedule.Recorder recorder; // null unless the order of turns is recorded
+    private GameMetrics metrics; // null unless the game is measured
+    private CardJournal journal; // null unless the moves of the cards are recorded
 
     /**
      * Creates an instance of the CardGame.
      */
     public CardGame(){
-        this.cards = new LinkedList<>();
         this.players = new ArrayList<>();
         this.decks = new ArrayList<>();
         resetIDs();
     }
 
     /**
-     * A method to return all the cards in the pack (all the cards used in the game).
+     * A method to return the cards left in the pack, those which have not been dealt yet.
      *
-     * @return A LinkedList of all objects of type Card
+     * @return A copy of the values of the cards left, from the top of the pack
      */
-    public LinkedList<Card> getCards() {
-        return cards;
+    public int[] getCards() {
+        return pack == null ? new int[0] : Arrays.copyOfRange(pack, dealPosition, pack.length);
     }
 
     /**
@@ -51,11 +92,229 @@ public class CardGame extends Thread{
 
 
     /**
-     * Resets all IDs, to prevent incorrect IDs being given when creating multiple instance of the game.
+     * Gets the way in which player turns are made atomic.
+     *
+     * @return The turn locking mode of the game
+     */
+    public TurnLocking getTurnLocking() {
+        return turnLocking;
+    }
+
+    /**
+     * Measures the game as it is played, must be called before the cards are dealt.
+     *
+     * @param metrics The metrics of the game, for as many players as the game has, or null to measure nothing
+     */
+    public void setMetrics(GameMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Gets the metrics of the game.
+     *
+     * @return The metrics, or null if the game is not measured
+     */
+    public GameMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Records every move of every card in a journal, must be called before the cards are dealt.
+     *
+     * @param journal The journal the moves are recorded in, for the number of players of the game
+     */
+    public void setJournal(CardJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Gets the journal of the moves of the cards.
+     *
+     * @return The journal, or null if the moves are not recorded
+     */
+    public CardJournal getJournal() {
+        return journal;
+    }
+
+    /**
+     * Sets the way in which player turns are made atomic, must be called before the player threads are started.
+     *
+     * @param turnLocking The turn locking mode to be used
+     */
+    public void setTurnLocking(TurnLocking turnLocking) {
+        this.turnLocking = turnLocking;
+    }
+
+    /**
+     * Sets the threads the players take their turns on, must be called before the game is played.
+     *
+     * @param playerThreads The kind of thread each player runs on
+     * @param poolSize The number of threads shared by the players, only used by pooled players
+     * @throws IllegalArgumentException if pooled players are given no threads
+     * @throws UnsupportedOperationException if virtual threads are asked for on a Java without them, before 21
+     */
+    public void setPlayerThreads(PlayerThreads playerThreads, int poolSize) {
+        if (playerThreads == PlayerThreads.POOLED && poolSize <= 0) {
+            throw new IllegalArgumentException("A pool of players needs at least one thread");
+        }
+        if (playerThreads == PlayerThreads.VIRTUAL && !hasVirtualThreads()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21, this is Java "
+                    + Runtime.version().feature());
+        }
+        this.playerThreads = playerThreads;
+        this.poolSize = poolSize;
+    }
+
+    /**
+     * Gets the threads the players take their turns on.
+     *
+     * @return The kind of thread each player runs on
+     */
+    public PlayerThreads getPlayerThreads() {
+        return playerThreads;
+    }
+
+    /**
+     * Checks whether players can run on virtual threads, which this Java only has from Java 21.
+     *
+     * @return True if PlayerThreads.VIRTUAL can be used
+     */
+    public static boolean hasVirtualThreads() {
+        return VIRTUAL_THREADS != null;
+    }
+
+    /**
+     * Sets when the lines written to the output files are flushed, must be called before the cards are dealt.
+     *
+     * @param flushPolicy The flush policy of the output files
+     * @param eventsPerFlush The number of lines a player writes between flushes, used by FlushPolicy.EVERY_N_EVENTS
+     */
+    public void setFlushPolicy(GameLog.FlushPolicy flushPolicy, int eventsPerFlush) {
+        this.flushPolicy = flushPolicy;
+        this.eventsPerFlush = eventsPerFlush;
+    }
+
+    /**
+     * Makes players publish their events to a queue, written to the output files by a background thread.
+     * Must be called before the cards are dealt.
+     *
+     * @param eventQueueCapacity The most events waiting to be written, or 0 for players to write their own events
+     * @param backpressure How a player publishing to a full queue is held back
+     */
+    public void setAsyncEventLog(int eventQueueCapacity, GameEventWriter.Backpressure backpressure) {
+        this.eventQueueCapacity = eventQueueCapacity;
+        this.backpressure = backpressure;
+    }
+
+    /**
+     * Sets the directory the output files of the game are written to, must be called before the cards are dealt.
+     *
+     * @param outputDirectory The location of the output directory, with or without a separator at the end,
+     *                        or null for a game that writes no output files
+     */
+    public void setOutputDirectory(String outputDirectory) {
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Sets where the output of the game is written, in place of the files of the output directory, which is then
+     * neither created nor emptied. Must be called before the cards are dealt.
+     *
+     * @param outputSink The sink of the output, or null to write the files of the output directory
+     */
+    public void setOutputSink(OutputSink outputSink) {
+        this.outputSink = outputSink;
+    }
+
+    /**
+     * Gets where the output of the game is written, when it is not written to the files of the output directory.
+     *
+     * @return The sink of the output, or null if the output directory is written to
+     */
+    public OutputSink getOutputSink() {
+        return outputSink;
+    }
+
+    /**
+     * Stops the game announcing its winner on the console, for games played in bulk.
+     *
+     * @param quiet True if the winner should not be announced
+     */
+    public void setQuiet(boolean quiet) {
+        this.quiet = quiet;
+    }
+
+    /**
+     * Seeds the random discards of every player, and the order the player threads pick their players in, so that
+     * the choices of each player can be repeated. Must be called once the players have been added.
+     *
+     * @param seed The seed the seeds of the players are derived from
+     */
+    public void setRandomSeed(long seed) {
+        this.randomSeed = seed;
+        SplittableRandom seeds = new SplittableRandom(seed);
+        for (Player player : players) {
+            player.setRandomSeed(seeds.nextLong());
+        }
+        synchronized (allPlayers) {
+            Collections.sort(allPlayers);
+            Collections.shuffle(allPlayers, new Random(seeds.nextLong()));
+        }
+    }
+
+    /**
+     * Records the order in which the players take their turns, so that the game can be played again on a single
+     * thread. Must be called once the players have been added and seeded, and before the game is played.
+     *
+     * @throws IllegalStateException if the players have not been seeded, as their choices could not be repeated
+     */
+    public void recordSchedule() {
+        if (randomSeed == null) {
+            throw new IllegalStateException("Only games with seeded players can be recorded");
+        }
+        recorder = new TurnSchedule.Recorder(numberOfPlayers, randomSeed);
+    }
+
+    /**
+     * Gets the order in which the players took their turns, once the game has been played.
+     *
+     * @return The recorded schedule, or null if the game was not recorded
+     */
+    public TurnSchedule getRecordedSchedule() {
+        return recorder == null ? null : recorder.toSchedule();
+    }
+
+    /**
+     * Sets how every player chooses the card to discard at the end of their turn.
+     * Must be called once the players have been added.
+     *
+     * @param discardStrategy The strategy choosing the discards of the players
+     */
+    public void setDiscardStrategy(DiscardStrategy discardStrategy) {
+        for (Player player : players) {
+            player.setDiscardStrategy(discardStrategy);
+        }
+    }
+
+    /**
+     * Gets the total number of turns taken by all players so far.
+     *
+     * @return The number of turns taken
+     */
+    public long getTurnsTaken() {
+        long turns = 0;
+        for (Player player : players) {
+            turns += player.getTurnsTaken();
+        }
+        return turns;
+    }
+
+    /**
+     * Resets all IDs of the game, so that they are allocated from the start again.
+     * IDs are allocated per game, so other instances of the game are not affected.
      */
     public void resetIDs(){
-        Player.resetPlayerID();
-        CardDeck.resetDeckID();
+        ids.reset();
     }
 
     /**
@@ -79,40 +338,92 @@ public class CardGame extends Thread{
 
 
         for (int i=0; i<numberOfPlayers; i++) {
-            players.add(new Player(numberOfPlayers, "Player " + (i+1)));
-            decks.add(new CardDeck("Deck" + i));
+            players.add(new Player(ids, numberOfPlayers, "Player " + (i+1)));
+            decks.add(new CardDeck(ids, "Deck" + i, CardDeck.capacityFor(numberOfPlayers)));
+            turnPossible.add(turnLock.newCondition());
+            parkedPlayers.add(null);
         }
     }
 
     /**
-     * Checks whether the pack which has been inputted is a valid pack following the rules of the game
+     * Checks that every card value in a pack is legal, following the rules of the game.
      *
-     * @param filePath The location of the file containing the pack, as a txt.
-     * @return True if the pack is valid following the rules of the game.
-     * @throws IOException thrown when the filepath is invalid.
-     * @throws IndexOutOfBoundsException if the file contains more or less than the required number of cards.
-     * @throws NumberFormatException when the file contains an illegal card value.
+     * @param values The values of the cards in the pack
+     * @throws NumberFormatException when the pack contains an illegal card value.
      */
-    public boolean loadPackFromFile(String filePath)
-            throws NumberFormatException, ArrayIndexOutOfBoundsException, IOException {
-        BufferedReader reader = new BufferedReader(new FileReader(filePath));
-
-        String stringCard;
-        while ((stringCard = reader.readLine())!= null){
-            int cardValue = Integer.parseInt(stringCard);
+    static void checkCardValues(int[] values) throws NumberFormatException {
+        for (int cardValue : values) {
             if (cardValue < 0){
                 throw new NumberFormatException(); // Thrown when an illegal card value is given
             }
-            cards.add(new Card(0, 0, cardValue));
         }
+    }
 
-        int numberOfCards = 8 * numberOfPlayers;
-        if (cards.size() == numberOfCards ){
+    /**
+     * Loads a pack which has been generated rather than read from a file, checking it follows the rules of the game.
+     * The pack is dealt from the values in place, without copying them, so they must not be changed afterwards.
+     *
+     * @param values The values of the cards in the pack, from the top of the pack
+     * @return True if the pack is valid following the rules of the game.
+     * @throws IndexOutOfBoundsException if there are more or less than the required number of cards.
+     * @throws NumberFormatException when the pack contains an illegal card value.
+     */
+    public boolean loadPack(int[] values) throws NumberFormatException, ArrayIndexOutOfBoundsException {
+        checkCardValues(values);
+
+        if (values.length == 8 * numberOfPlayers){
+            pack = values;
+            dealPosition = 0;
             return true;
         }
-        else {
-            throw new ArrayIndexOutOfBoundsException(); // Thrown when there are too many or too little cards
+        throw new ArrayIndexOutOfBoundsException(); // Thrown when there are too many or too little cards
+    }
+
+    /**
+     * Checks whether the pack which has been inputted is a valid pack following the rules of the game
+     *
+     * @param filePath The location of the file containing the pack, as a txt or a binary pack.
+     * @return True if the pack is valid following the rules of the game.
+     * @throws IOException thrown when the filepath is invalid, or the binary pack is corrupt.
+     * @throws IndexOutOfBoundsException if the file contains more or less than the required number of cards.
+     * @throws NumberFormatException when the file contains an illegal card value, naming the line it is on.
+     */
+    public boolean loadPackFromFile(String filePath)
+            throws NumberFormatException, ArrayIndexOutOfBoundsException, IOException {
+        if (BinaryPack.isBinaryPack(filePath)) { // checked against the rules from its header, before its cards are read
+            return loadPack(BinaryPack.read(filePath, 8 * numberOfPlayers));
         }
+        return loadPack(PackReader.read(filePath, 8 * numberOfPlayers));
+    }
+
+    /**
+     * Loads a pack through a cache of packs shared by many games, reading the file only if the cache does not hold it.
+     * The cache checks the values once, when it reads the file, and the cards are dealt by reading the shared values in
+     * place, without ever writing to them.
+     *
+     * @param cache The cache holding the packs
+     * @param filePath The location of the file containing the pack, as a txt or a binary pack.
+     * @return True if the pack is valid following the rules of the game.
+     * @throws IOException thrown when the filepath is invalid, or the binary pack is corrupt.
+     * @throws IndexOutOfBoundsException if the file contains more or less than the required number of cards.
+     * @throws NumberFormatException when the file contains an illegal card value.
+     */
+    public boolean loadPackFromCache(PackCache cache, String filePath)
+            throws NumberFormatException, ArrayIndexOutOfBoundsException, IOException {
+        pack = cache.getShared(filePath, 8 * numberOfPlayers);
+        dealPosition = 0;
+        return true;
+    }
+
+    /**
+     * Makes setup deal a generated pack rather than asking for the location of a pack file.
+     *
+     * @param packGenerator The generator of the pack
+     * @param seed The seed of the pack
+     */
+    public void setPackGenerator(PackGenerator packGenerator, long seed){
+        this.packGenerator = packGenerator;
+        this.packSeed = seed;
     }
 
     /**
@@ -125,12 +436,14 @@ public class CardGame extends Thread{
      */
     public void setup(String stringNumberOfPlayers, String packFileName, Boolean testing) {
 
-        File outputDirectory = new File(OUTPUT_DIRECTORY_PATH);
-        if(outputDirectory.exists()) {
-            Arrays.stream(Objects.requireNonNull(outputDirectory).listFiles()).forEach(File::delete);
-        }
-        else{
-            outputDirectory.mkdir();
+        if (outputDirectory != null && outputSink == null) {
+            File directory = new File(outputDirectory);
+            if(directory.exists()) {
+                Arrays.stream(Objects.requireNonNull(directory).listFiles()).forEach(File::delete);
+            }
+            else{
+                directory.mkdirs();
+            }
         }
         Scanner scanner = new Scanner(System.in);
 
@@ -153,7 +466,9 @@ public class CardGame extends Thread{
         }
 
         boolean validPack = false;
-        if(!testing) {
+        if (packGenerator != null) {
+            loadPack(packGenerator.generate(numberOfPlayers, packSeed));
+        } else if(!testing) {
             do {
                 System.out.println("Please enter the location of pack to load:");
                 packFileName = scanner.nextLine();
@@ -179,29 +494,43 @@ public class CardGame extends Thread{
 
     /**
      * Deals 4 cards to all the players in the game from the pack, in a round-robin fashion starting from player 1.
+     * Player j is dealt the cards at j, j + n, j + 2n and j + 3n from the top of the pack, for n players, so each hand
+     * is filled at once rather than one card per player per round.
+     *
+     * @throws NoSuchElementException if the pack has fewer than 4 cards per player left
      */
     public void dealCardsForPlayers() {
-        //deal cards for all 'players'
-        for(int i=0; i<4; i++) {
-            for (int j = 0; j < numberOfPlayers; j++) {
-                Card topCard = cards.pop();
-                players.get(j).addCard(topCard.getValue());
-            }
+        int top = takeRound();
+        for (int j = 0; j < numberOfPlayers; j++) {
+            players.get(j).addCards(pack, top + j, numberOfPlayers, 4);
         }
     }
 
     /**
      * Deals 4 cards to all the decks in the game from the remaining cards in the pack, again in a round-robin fashion,
      * starting from deck 1
+     *
+     * @throws NoSuchElementException if the pack has fewer than 4 cards per deck left
      */
     public void dealCardsForDecks() {
-        //deal cards for all 'decks'
-        for(int i=0; i<4; i++) {
-            for (int j = 0; j < numberOfPlayers; j++) {
-                Card topCard = cards.pop();
-                decks.get(j).addCard(topCard.getValue());
-            }
+        int top = takeRound();
+        for (int j = 0; j < numberOfPlayers; j++) {
+            decks.get(j).addCards(pack, top + j, numberOfPlayers, 4);
+        }
+    }
+
+    /**
+     * Takes 4 cards per player off the top of the pack, leaving the values in place.
+     *
+     * @return The position of the first card taken
+     */
+    private int takeRound(){
+        int cards = 4 * numberOfPlayers;
+        if (pack == null || pack.length - dealPosition < cards) {
+            throw new NoSuchElementException("The pack has fewer than " + cards + " cards left to deal");
         }
+        dealPosition += cards;
+        return dealPosition - cards;
     }
 
     /**
@@ -210,19 +539,28 @@ public class CardGame extends Thread{
     public void dealCards(){
         dealCardsForPlayers();
         dealCardsForDecks();
-        writeInitialHandOfPlayersToFile((OUTPUT_DIRECTORY_PATH));
+        if (outputSink != null) {
+            writeInitialHands(outputSink);
+        } else if (outputDirectory != null) {
+            writeInitialHandOfPlayersToFile(outputDirectory);
+        }
     }
 
     /**
-     * Outputs a message to a players output file.
+     * Outputs a message to a players output file. Messages to the directory of the game log are written through its
+     * open files, any other directory has its file opened and closed for the one message.
      *
      * @param sentence The message to be outputted to the file
      * @param player The player whose file is being outputted to.
      * @param path the path to the output files
      */
     public void outputPlayerMsg(String sentence, int player, String path){
+        if (log != null && path.equals(log.getDirectory())) {
+            log.writePlayerMsg(player, sentence);
+            return;
+        }
         try {
-            FileWriter pWrite = new FileWriter(path + File.separator + "player" + (player + 1) + "_output.txt", true);
+            FileWriter pWrite = new FileWriter(new File(path, "player" + (player + 1) + "_output.txt"), true);
             pWrite.write(sentence);
             pWrite.close();
         } catch (IOException e) { // caught if the path does not exist.
@@ -231,53 +569,203 @@ public class CardGame extends Thread{
     }
 
     /**
-     * Writes to the corresponding player output files, the cards initially in each of the players' hands.
+     * Opens the game log in the given directory, and writes to the corresponding player output files,
+     * the cards initially in each of the players' hands. The initial hands are flushed straight away.
      *
      * @param directory The location of the directory where the output files are to be written to
      */
     public void writeInitialHandOfPlayersToFile(String directory) {
+        writeInitialHands(new OutputSink.Files(directory));
+    }
+
+    /**
+     * Opens the game log in a sink, and writes the cards initially in each of the players' hands to it.
+     *
+     * @param sink Where the output of the game is written
+     */
+    private void writeInitialHands(OutputSink sink) {
+        closeLog();
+        log = new GameLog(sink, numberOfPlayers, flushPolicy, eventsPerFlush);
+        log.setMetrics(metrics);
         for(int i=1; i<=numberOfPlayers; i++) {
-            try {
-                BufferedWriter pWrite = new BufferedWriter(new FileWriter(directory + "player" + i + "_output.txt"));
-                pWrite.write(players.get(i-1).getPlayerName() + " initial hand is " + players.get(i-1).getHandAsString());
-                pWrite.close();
-            } catch (IOException e) { // Caught if the file path is not correct
-                throw new RuntimeException(e);
+            log.writePlayerMsg(i - 1, players.get(i-1).getPlayerName() + " initial hand is " + players.get(i-1).getHandAsString());
+            log.flushPlayer(i - 1);
+        }
+        if (eventQueueCapacity > 0) {
+            eventWriter = new GameEventWriter(log, eventQueueCapacity, backpressure);
+        }
+    }
+
+    /**
+     * Records an event in its player's output file, either by publishing it to the event writer,
+     * or, when events are not written in the background, by writing it straight away.
+     *
+     * @param event The event to be recorded
+     */
+    private void recordEvent(GameEvent event) {
+        if (eventWriter != null) {
+            eventWriter.publish(event);
+        } else if (logsGame()) {
+            log.writeEvent(event);
+        } else if (outputDirectory != null && outputSink == null) {
+            outputPlayerMsg(event.toString(), event.getPlayer(), outputDirectory);
+        }
+    }
+
+    /**
+     * Checks whether the game log is open on the output of this game, its sink or its output directory, rather than
+     * on some other directory.
+     *
+     * @return True if the events of the game are written to the game log
+     */
+    private boolean logsGame() {
+        if (log == null) {
+            return false;
+        }
+        return outputSink != null ? log.getSink() == outputSink
+                : outputDirectory != null && outputDirectory.equals(log.getDirectory());
+    }
+
+    /**
+     * Gets the game log the players write the events of their turns to themselves, formatting each line straight
+     * into their file's buffer, so that a turn creates no event objects and copies no hands.
+     *
+     * @return The game log, or null if events are published to the event writer, or written some other way
+     */
+    private GameLog turnLog() {
+        return eventWriter == null && logsGame() ? log : null;
+    }
+
+    /**
+     * Checks whether the events of the game are written anywhere, so that they need to be created at all.
+     *
+     * @return True if events are written to output files, or to the sink of the output
+     */
+    private boolean isRecordingEvents() {
+        return eventWriter != null || outputDirectory != null || outputSink != null;
+    }
+
+    /**
+     * Writes the contents of every deck to the output of the game.
+     */
+    private void writeDecks() {
+        if (logsGame()) {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                log.writeDeckContents(i, decks.get(i));
             }
+        } else if (outputDirectory != null && outputSink == null) {
+            outputDeck(outputDirectory);
         }
     }
 
     /**
-     * Checks if any player currently has a winning hand, if so the global variable isOver will be set to true.
+     * Checks if any player has a winning hand, if so the global variable isOver will be set to true. Every hand is
+     * only checked once the cards have been dealt; after that, a turn can only complete the hand of the player taking
+     * it, so each turn checks that hand alone.
      */
-    public synchronized void checkWinners(){
-        for(int i=0; i < numberOfPlayers; i++) {
-            if (players.get(i).checkWin()){
-                winner = players.get(i).getPlayerID();
+    public void checkWinners(){
+        turnLock.lock();
+        try {
+            for(int i=0; i < numberOfPlayers; i++) {
+                if (players.get(i).checkWin() && claimWin(i)){
+                    break;
+                }
+            } // Finds the winner
+            if (metrics != null) {
+                metrics.countWinChecks(numberOfPlayers);
             }
-        } // Finds the winner
 
-        writeWinnerInFile(); // Writes the winner to all the player output files
+            writeWinnerInFile(); // Writes the winner to all the player output files
+        } finally {
+            turnLock.unlock();
+        }
+    }
+
+    /**
+     * Claims the win for a player with a winning hand. Only the first player to claim it wins, without taking any
+     * lock, and no player can win once the game has been stopped.
+     *
+     * @param playerIndex The index of the player with a winning hand (zero-indexed)
+     * @return True if the player is the winner
+     */
+    private boolean claimWin(int playerIndex){
+        int playerID = players.get(playerIndex).getPlayerID();
+        if (!outcome.compareAndSet(UNDECIDED, playerID)) {
+            return false;
+        }
+        winner = playerID;
+        if (!quiet) {
+            System.out.println("Player " + (winner + 1) + " has won");
+        }
+        recordWin();
+        return true;
     }
 
     /**
      * Writes to each of the player files, who has won, as well as each of the players final hand.
+     * The game log is always flushed and closed afterwards, even if writing fails.
      */
     private void writeWinnerInFile() {
         if(winner != - 1) {
-            System.out.println("Player " + (winner + 1) + " has won");
             isOver = true;
+            writeExitsInFile();
+            signalAllPlayers(); // Releases the players waiting on an empty deck, so that they can exit
+            interrupt(); // Prevents other threads from continuing the game process
+        }
+    }
+
+    /**
+     * Writes the exit of every player to their output files, with the winner if there is one, then the decks.
+     * The game log is always flushed and closed afterwards, even if writing fails.
+     */
+    private void writeExitsInFile() {
+        try {
             for(int i=0; i < numberOfPlayers; i++){
-                if(winner == players.get(i).getPlayerID()){
-                    outputPlayerMsg("\nPlayer " + (i + 1) + " wins", i, OUTPUT_DIRECTORY_PATH);
-                } else{
-                    outputPlayerMsg("\nPlayer " + (winner + 1) + " has informed player " + (i+1) + " that player " + (winner + 1) + " has won", i, OUTPUT_DIRECTORY_PATH);
+                if (winner != -1) { // a stopped game has no winner to write
+                    if(winner == players.get(i).getPlayerID()){
+                        recordEvent(GameEvent.win(i));
+                    } else{
+                        recordEvent(GameEvent.informed(i, winner));
+                    }
                 }
-                outputPlayerMsg("\nPlayer " + (i + 1) + " exits", i, OUTPUT_DIRECTORY_PATH);
-                outputPlayerMsg("\nPlayer " + (i + 1) + " final hand: " + players.get(i).getHandAsString(), i, OUTPUT_DIRECTORY_PATH);
-                outputDeck(OUTPUT_DIRECTORY_PATH);
+                recordEvent(GameEvent.exit(i));
+                recordEvent(GameEvent.finalHand(i, players.get(i).getHandValues()));
             }
-            interrupt(); // Prevents other threads from continuing the game process
+            writeDecks();
+        } finally {
+            closeLog();
+        }
+    }
+
+    /**
+     * Ends the game without a winner, for games which are stopped rather than won. Players exit once they finish
+     * the turn they are taking, without writing a winner to their output files.
+     */
+    public void endWithoutWinner() {
+        turnLock.lock();
+        try {
+            if (!isOver && outcome.compareAndSet(UNDECIDED, STOPPED)) {
+                isOver = true;
+                if (turnLocking == TurnLocking.MONITOR) { // no turn is in progress while the turn lock is held
+                    writeExitsInFile();
+                }
+            }
+            signalAllPlayers();
+        } finally {
+            turnLock.unlock();
+        }
+        wakeDeckWaiters(); // outside the turn lock, which a striped turn takes while holding the locks of its decks
+    }
+
+    /**
+     * Flushes and closes the game log, if one is open, after writing every event still waiting to be written.
+     */
+    private void closeLog() {
+        if (eventWriter != null) {
+            eventWriter.shutdown(); // also closes the log
+            eventWriter = null;
+        } else if (log != null) {
+            log.close();
         }
     }
 
@@ -287,9 +775,15 @@ public class CardGame extends Thread{
      * @param path The location of the pack, inputted by the user.
      */
     public void outputDeck(String path){
+        if (log != null && path.equals(log.getDirectory())) {
+            for(int i=1; i<=numberOfPlayers; i++) {
+                log.writeDeckContents(i - 1, decks.get(i - 1));
+            }
+            return;
+        }
         for(int i=1; i<=numberOfPlayers; i++) {
             try {
-                BufferedWriter dWrite = new BufferedWriter(new FileWriter(path + File.separator + "deck" + i + "_output.txt"));
+                BufferedWriter dWrite = new BufferedWriter(new FileWriter(new File(path, "deck" + i + "_output.txt")));
                 dWrite.write("Deck " + i + " contents: " + decks.get(i - 1).getCards());
                 dWrite.close();
             } catch (IOException e) { // Caught if the file path is not correct
@@ -299,45 +793,469 @@ public class CardGame extends Thread{
     }
 
     /**
-     * Draws a card for a given player in the game, then write it to player output file
+     * Draws a card for a given player in the game, then write it to player output file.
+     * The caller must hold either the turn lock of the game or the lock of the player's draw deck.
      *
      * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
      */
-    public synchronized void drawCard(int playerIndex) {
-        players.get(playerIndex).addCard(decks.get(playerIndex).drawCard());
-        outputPlayerMsg("\nPlayer " + (playerIndex + 1) + " draws a " + players.get(playerIndex).getHand().get(4) + " from deck " + (playerIndex + 1), playerIndex, OUTPUT_DIRECTORY_PATH);
+    public void drawCard(int playerIndex) {
+        int value = decks.get(playerIndex).drawCard();
+        players.get(playerIndex).addCard(value);
+        GameLog turnLog = turnLog();
+        if (turnLog != null) {
+            turnLog.writeDraw(playerIndex, value, playerIndex);
+        } else if (isRecordingEvents()) {
+            recordEvent(GameEvent.draw(playerIndex, value, playerIndex));
+        }
     }
 
     /**
-     * Discards a card from a players hand to the appropriate deck, then write it to the corresponding deck output
+     * Discards a card from a players hand to the appropriate deck, then write it to the corresponding deck output.
+     * The caller must hold either the turn lock of the game or the lock of the player's discard deck.
      *
      * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
      */
-    public synchronized void discardCard(int playerIndex){
+    public void discardCard(int playerIndex){
         int value = players.get(playerIndex).removeCard();
         int discardDeckIndex = players.get(playerIndex).getDiscardDeckID();
         decks.get(players.get(playerIndex).getDiscardDeckID()).addCard(value);
-        outputPlayerMsg("\nPlayer " + (playerIndex + 1) + " discards a " + value + " to deck " + (discardDeckIndex + 1), playerIndex, OUTPUT_DIRECTORY_PATH);
-        outputPlayerMsg("\nPlayer " + (playerIndex + 1) + "'s current hand is " + players.get(playerIndex).getHandAsString(), playerIndex, OUTPUT_DIRECTORY_PATH);
+        if (journal != null) {
+            journal.recordTurn(playerIndex, players.get(playerIndex).getLastRemovedIndex());
+        }
+        FlightEvents.CardDiscarded event = new FlightEvents.CardDiscarded();
+        if (event.shouldCommit()) {
+            event.player = playerIndex + 1;
+            event.deck = discardDeckIndex + 1;
+            event.value = value;
+            event.commit();
+        }
+        GameLog turnLog = turnLog();
+        if (turnLog != null) {
+            turnLog.writeDiscard(playerIndex, value, discardDeckIndex);
+            turnLog.writeHand(playerIndex, players.get(playerIndex));
+        } else if (isRecordingEvents()) {
+            recordEvent(GameEvent.discard(playerIndex, value, discardDeckIndex));
+            recordEvent(GameEvent.hand(playerIndex, players.get(playerIndex).getHandValues()));
+        }
     }
 
     /**
      * Draws a card for a given player in the game, then calls for the player to discard a card, and checks if there are any winners.
+     * Holds the turn lock of the game for the whole turn, so only one player can move at a time. A player who cannot
+     * take a turn waits until another player has taken one, or until the thread is interrupted, which leaves the
+     * thread's interrupt status set.
+     *
+     * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
+     * @return True if a turn was taken, false if the game is over or the player could not draw or discard
+     */
+    public boolean gameplay(int playerIndex){
+        long start = metrics != null ? metrics.startTurn(playerIndex) : 0;
+        turnLock.lock(); // a lock rather than the monitor, so that waiting virtual threads release their carrier
+        try {
+            if (takeMonitorTurn(playerIndex, start)) {
+                return true;
+            }
+            if (isOver) {
+                return false; // the game was won while this player waited for the lock, nobody will signal it
+            }
+            boolean emptyDrawDeck = decks.get(playerIndex).isEmpty();
+            FlightEvents.DeckStarved event = startDeckWait(playerIndex, emptyDrawDeck);
+            try {
+                turnPossible.get(playerIndex).await();
+            } catch (InterruptedException e) { // Caught when the game is stopped from outside, the player then exits
+                Thread.currentThread().interrupt();
+            }
+            endDeckWait(event, playerIndex, emptyDrawDeck);
+            return false;
+        } finally {
+            turnLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a turn under the turn lock of the game if the player can, without waiting if they cannot.
+     *
+     * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
+     * @return True if a turn was taken, false if the game is over or the player could not draw or discard
+     */
+    private boolean monitorTurn(int playerIndex){
+        long start = metrics != null ? metrics.startTurn(playerIndex) : 0;
+        turnLock.lock();
+        try {
+            return takeMonitorTurn(playerIndex, start);
+        } finally {
+            turnLock.unlock();
+        }
+    }
+
+    /**
+     * Takes a turn if the player can, the caller holding the turn lock of the game.
      *
      * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
+     * @param start The time the player started waiting for the turn lock, or 0 if the turn is not timed
+     * @return True if a turn was taken, false if the game is over or the player could not draw or discard
      */
-    public synchronized void gameplay(int playerIndex){ // synchronized to assure thread safety
-        if(!isOver && !decks.get(playerIndex).getCards().isEmpty()) {
-            notifyAll();
+    private boolean takeMonitorTurn(int playerIndex, long start){
+        long locked = start != 0 ? System.nanoTime() : 0;
+        if (isOver || !canTakeTurn(playerIndex)) {
+            return false;
+        }
+        FlightEvents.Turn event = new FlightEvents.Turn();
+        event.begin();
+        drawCard(playerIndex);
+        discardCard(playerIndex);
+        endTurn(playerIndex);
+        // Only the player drawing from the discard deck, and the player discarding to the draw deck, can have
+        // been waiting on this turn, each on their own condition
+        turnPossible.get(players.get(playerIndex).getDiscardDeckID()).signal();
+        turnPossible.get((playerIndex + numberOfPlayers - 1) % numberOfPlayers).signal();
+        unparkPlayer(playerIndex);
+        unparkPlayer(players.get(playerIndex).getDiscardDeckID());
+        // A turn only changes the hand of the player taking it, so no other hand needs checking
+        if (players.get(playerIndex).checkWin() && claimWin(playerIndex)) {
+            writeWinnerInFile();
+        }
+        if (metrics != null) {
+            metrics.countWinChecks(1);
+            metrics.endTurn(playerIndex, start, locked);
+        }
+        commitTurn(event, playerIndex);
+        return true;
+    }
+
+    /**
+     * Wakes every player waiting for another player to take a turn, so that they look at the game again.
+     */
+    public void wakePlayers(){
+        turnLock.lock();
+        try {
+            signalAllPlayers();
+        } finally {
+            turnLock.unlock();
+        }
+        wakeDeckWaiters();
+    }
+
+    /**
+     * Signals the condition of every player, for changes to the whole game. The caller must hold the turn lock.
+     */
+    private void signalAllPlayers(){
+        for (Condition condition : turnPossible) {
+            condition.signalAll();
+        }
+        if (turnLocking == TurnLocking.MONITOR) {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                unparkPlayer(i);
+            }
+        }
+    }
+
+    /**
+     * Signals the condition of every deck, for the end of the game, so that players waiting on a deck nobody will
+     * change again can exit. Takes the lock of each deck in turn, so must be called without holding any lock.
+     */
+    private void wakeDeckWaiters(){
+        for (int i = 0; i < numberOfPlayers; i++) {
+            CardDeck deck = decks.get(i);
+            deck.getLock().lock();
+            try {
+                deck.getChanged().signalAll();
+                if (turnLocking == TurnLocking.STRIPED) {
+                    unparkPlayer(i);
+                }
+            } finally {
+                deck.getLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Parks a pooled player who could not take a turn on the deck that stopped them, to be resubmitted to the pool by
+     * the neighbour who changes it, rather than queueing up to try again while nothing has changed.
+     *
+     * @param pooledPlayer The player who could not take a turn
+     * @return True if the player was parked, false if the deck has changed since or the game is over, so that the
+     *         player should try again straight away
+     */
+    private boolean parkPlayer(PooledPlayer pooledPlayer){
+        int playerIndex = pooledPlayer.playerIndex;
+        boolean emptyDrawDeck = decks.get(playerIndex).isEmpty();
+        int deckIndex = emptyDrawDeck ? playerIndex : players.get(playerIndex).getDiscardDeckID();
+        CardDeck deck = decks.get(deckIndex);
+        ReentrantLock lock = turnLocking == TurnLocking.STRIPED ? deck.getLock() : turnLock;
+        lock.lock();
+        try {
+            // Checked again under the lock the neighbour changes the deck under, so that the change cannot be missed
+            if (isOver || (emptyDrawDeck ? !deck.isEmpty() : !deck.isFull())) {
+                return false;
+            }
+            // Only one player can be stopped by a deck at a time, as a deck cannot be both empty and full
+            FlightEvents.DeckStarved event = startDeckWait(playerIndex, emptyDrawDeck);
+            pooledPlayer.deckWait = event.isEnabled() ? event : null; // only kept, so allocated, while recording
+            pooledPlayer.emptyDrawDeck = emptyDrawDeck;
+            parkedPlayers.set(deckIndex, pooledPlayer);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Resubmits the pooled player parked on a deck, if there is one, once the deck has changed or the game is over.
+     * The caller must hold the lock guarding the deck: the turn lock under monitor locking, the deck's own otherwise.
+     *
+     * @param deckIndex The index of the deck (zero-indexed)
+     */
+    private void unparkPlayer(int deckIndex){
+        PooledPlayer parked = parkedPlayers.get(deckIndex);
+        if (parked != null) {
+            parkedPlayers.set(deckIndex, null);
+            parked.pool.execute(parked);
+        }
+    }
+
+    /**
+     * Draws a card for a given player in the game, then calls for the player to discard a card, and checks if
+     * they have won. Only the player's draw deck and discard deck are locked, so players that do not share a deck
+     * can take their turns at the same time. A player who cannot take a turn waits until the neighbour sharing the
+     * deck that stopped them has changed it, or until the thread is interrupted, which leaves its interrupt status set.
+     *
+     * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
+     * @return True if a turn was taken, false if the game is over or the player could not draw or discard
+     */
+    public boolean stripedGameplay(int playerIndex){
+        if (takeStripedTurn(playerIndex)) {
+            return true;
+        }
+        Thread.yield(); // A neighbour already running often changes the deck within one yield, far sooner than a wakeup
+        if (takeStripedTurn(playerIndex)) {
+            return true;
+        }
+        awaitDeckChange(playerIndex);
+        return false;
+    }
+
+    /**
+     * Takes a turn under the locks of the player's draw deck and discard deck if the player can, without waiting if
+     * they cannot.
+     *
+     * @param playerIndex The index of the player who will be drawing a card (zero-indexed)
+     * @return True if a turn was taken, false if the game is over or the player could not draw or discard
+     */
+    private boolean takeStripedTurn(int playerIndex){
+        int discardDeckIndex = players.get(playerIndex).getDiscardDeckID();
+        // Decks are always locked in ascending index order, so two neighbours can never each hold one of the
+        // locks they both need. With a single player both indices are the same deck, and the lock is reentrant.
+        CardDeck firstDeck = decks.get(Math.min(playerIndex, discardDeckIndex));
+        CardDeck secondDeck = decks.get(Math.max(playerIndex, discardDeckIndex));
+        long start = metrics != null ? metrics.startTurn(playerIndex) : 0;
+        firstDeck.getLock().lock();
+        secondDeck.getLock().lock();
+        long locked = start != 0 ? System.nanoTime() : 0;
+        boolean won;
+        try {
+            if (isOver || !canTakeTurn(playerIndex)) {
+                return false;
+            }
+            FlightEvents.Turn event = new FlightEvents.Turn();
+            event.begin();
             drawCard(playerIndex);
             discardCard(playerIndex);
-            checkWinners();
-            return;
+            // Only the player discarding to the draw deck, and the player drawing from the discard deck, can have
+            // been waiting on this turn, each on the condition of that deck
+            firstDeck.getChanged().signalAll();
+            secondDeck.getChanged().signalAll();
+            unparkPlayer(playerIndex);
+            unparkPlayer(discardDeckIndex);
+            // A turn only changes the hand of the player taking it, so no other hand needs checking
+            won = players.get(playerIndex).checkWin();
+            if (won && recorder != null) {
+                // Ended under the turn lock while the schedule is recorded, so that of two players winning at once,
+                // the turn recorded first is the one declared the winner
+                turnLock.lock();
+                try {
+                    endTurn(playerIndex);
+                    declareWinner(playerIndex);
+                } finally {
+                    turnLock.unlock();
+                }
+            } else {
+                endTurn(playerIndex);
+                if (won) {
+                    declareWinner(playerIndex);
+                }
+            }
+            if (metrics != null) {
+                metrics.countWinChecks(1);
+                metrics.endTurn(playerIndex, start, locked);
+            }
+            commitTurn(event, playerIndex);
+        } finally {
+            secondDeck.getLock().unlock();
+            firstDeck.getLock().unlock();
+        }
+        if (won) {
+            wakeDeckWaiters();
         }
+        return true;
+    }
+
+    /**
+     * Waits, once a player could not take a turn under striped locking, for the neighbour sharing the deck that
+     * stopped them to change it: to add a card to their empty draw deck, or to draw one from their full discard deck.
+     * Returns once the deck has changed, the game is over or the players are woken, the wait being counted once, or
+     * once the thread is interrupted, which leaves the thread's interrupt status set.
+     *
+     * @param playerIndex The index of the player who could not take a turn (zero-indexed)
+     */
+    private void awaitDeckChange(int playerIndex){
+        boolean emptyDrawDeck = decks.get(playerIndex).isEmpty();
+        CardDeck deck = decks.get(emptyDrawDeck ? playerIndex : players.get(playerIndex).getDiscardDeckID());
+        deck.getLock().lock();
         try {
-            wait();
-        }catch(InterruptedException e){
-            e.printStackTrace();
+            // Checked again under the lock the neighbour changes the deck under, so that its signal cannot be missed
+            if (isOver || (emptyDrawDeck ? !deck.isEmpty() : !deck.isFull())) {
+                return;
+            }
+            FlightEvents.DeckStarved event = startDeckWait(playerIndex, emptyDrawDeck);
+            try {
+                deck.getChanged().await();
+            } catch (InterruptedException e) { // Caught when the game is stopped from outside, the player then exits
+                Thread.currentThread().interrupt();
+            }
+            endDeckWait(event, playerIndex, emptyDrawDeck);
+        } finally {
+            deck.getLock().unlock();
+        }
+    }
+
+    /**
+     * Marks the end of a player's turn in the game log, so that it can be flushed if the flush policy requires.
+     *
+     * @param playerIndex The index of the player who has finished a turn (zero-indexed)
+     */
+    private void endTurn(int playerIndex){
+        players.get(playerIndex).incrementTurnsTaken();
+        if (recorder != null) {
+            recorder.record(playerIndex);
+        }
+        if (log != null && eventWriter == null) { // the event writer ends the turn once it writes the hand
+            log.endTurn(playerIndex);
+        }
+    }
+
+    /**
+     * Records a turn in the flight recording, if turns are being recorded, its duration being the time the locks of
+     * the turn were held.
+     *
+     * @param event The event begun once the locks of the turn were held
+     * @param playerIndex The index of the player who has finished a turn (zero-indexed)
+     */
+    private void commitTurn(FlightEvents.Turn event, int playerIndex){
+        if (event.shouldCommit()) {
+            event.player = playerIndex + 1;
+            event.drawDeck = playerIndex + 1;
+            event.discardDeck = players.get(playerIndex).getDiscardDeckID() + 1;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records the winner in the flight recording, if wins are being recorded.
+     */
+    private void recordWin(){
+        FlightEvents.GameWon event = new FlightEvents.GameWon();
+        if (event.shouldCommit()) {
+            event.winner = winner + 1;
+            event.turnsTaken = players.get(winner).getTurnsTaken();
+            event.commit();
+        }
+    }
+
+    /**
+     * Checks whether a player has a card to draw, and room in their discard deck for the card they will discard.
+     * The caller must hold either the turn lock of the game or the locks of both decks.
+     *
+     * @param playerIndex The index of the player about to take a turn (zero-indexed)
+     * @return True if the player can take a turn
+     */
+    private boolean canTakeTurn(int playerIndex){
+        int discardDeckIndex = players.get(playerIndex).getDiscardDeckID();
+        // When a player discards to the deck they draw from, the draw always makes room for the discard
+        return !decks.get(playerIndex).isEmpty()
+                && (discardDeckIndex == playerIndex || !decks.get(discardDeckIndex).isFull());
+    }
+
+    /**
+     * Counts a player starting to wait for a neighbour, and begins the flight recording of the wait.
+     *
+     * @param playerIndex The index of the player who could not take a turn (zero-indexed)
+     * @param emptyDrawDeck True if the player's draw deck is empty, false if their discard deck is full
+     * @return The event of the wait, to be committed with endDeckWait once the wait is over
+     */
+    private FlightEvents.DeckStarved startDeckWait(int playerIndex, boolean emptyDrawDeck){
+        if (metrics != null) {
+            metrics.countDeckWait(playerIndex, emptyDrawDeck);
+        }
+        FlightEvents.DeckStarved event = new FlightEvents.DeckStarved();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Records a wait for a neighbour in the flight recording, if waits are being recorded.
+     *
+     * @param event The event begun by startDeckWait
+     * @param playerIndex The index of the player who waited (zero-indexed)
+     * @param emptyDrawDeck True if the player's draw deck was empty, false if their discard deck was full
+     */
+    private void endDeckWait(FlightEvents.DeckStarved event, int playerIndex, boolean emptyDrawDeck){
+        if (event.shouldCommit()) {
+            event.player = playerIndex + 1;
+            event.deck = (emptyDrawDeck ? playerIndex : players.get(playerIndex).getDiscardDeckID()) + 1;
+            event.emptyDrawDeck = emptyDrawDeck;
+            event.commit();
+        }
+    }
+
+    /**
+     * Records a player as the winner of the game, unless another player has already won or the game was stopped,
+     * ending the game for the other players.
+     *
+     * @param playerIndex The index of the player with a winning hand (zero-indexed)
+     */
+    private void declareWinner(int playerIndex) {
+        if (claimWin(playerIndex)) {
+            isOver = true;
+        }
+    }
+
+    /**
+     * Writes to a player's output file who has won, as well as the player's final hand. Used when the game was
+     * played with striped locking, where each player writes its own exit once it has stopped taking turns.
+     * The last player to exit writes the deck output files.
+     *
+     * @param playerIndex The index of the player exiting the game (zero-indexed)
+     */
+    private void writePlayerExitInFile(int playerIndex) {
+        if (winner != -1) { // a stopped game has no winner to write
+            if (winner == players.get(playerIndex).getPlayerID()) {
+                recordEvent(GameEvent.win(playerIndex));
+            } else {
+                recordEvent(GameEvent.informed(playerIndex, winner));
+            }
+        }
+        recordEvent(GameEvent.exit(playerIndex));
+        recordEvent(GameEvent.finalHand(playerIndex, players.get(playerIndex).getHandValues()));
+        if (log != null && eventWriter == null) { // the event writer may still be writing the player's events
+            log.closePlayer(playerIndex);
+        }
+        if (exitedPlayers.incrementAndGet() == numberOfPlayers) {
+            try {
+                writeDecks();
+            } finally {
+                closeLog();
+            }
         }
     }
 
@@ -345,33 +1263,373 @@ public class CardGame extends Thread{
     public void run()
     {
         // Assures that player 1 does not always go first
-        int player = allPlayers.pop();
+        int player;
+        synchronized (allPlayers) {
+            player = allPlayers.pop();
+        }
+
+        if (turnLocking == TurnLocking.STRIPED) {
+            while (!isOver && !Thread.currentThread().isInterrupted()) {
+                stripedGameplay(player);
+            }
+            if (!isOver) { // Interrupted, which stops the game for every player
+                endWithoutWinner();
+            }
+            writePlayerExitInFile(player);
+        } else {
+            while (!isOver && !Thread.currentThread().isInterrupted()) {
+                gameplay(player);
+            }
+            if (!isOver) { // Interrupted, which stops the game for every player
+                endWithoutWinner();
+            }
+        }
+    }
+
+    /**
+     * Plays the game to the end once the cards have been dealt, with the players taking turns on the threads set by
+     * setPlayerThreads. Returns once every player has exited.
+     *
+     * @return The index of the winning player (zero-indexed), or -1 if the game was stopped
+     * @throws InterruptedException if interrupted while waiting for the players to exit
+     */
+    public int play() throws InterruptedException {
+        checkWinners();
+
+        if(!isOver){ // If no one wins the game with their initial hand, the game begins
+            if (playerThreads == PlayerThreads.POOLED) {
+                playOnPool();
+            } else {
+                playOnThreads(playerThreads == PlayerThreads.VIRTUAL ? VIRTUAL_THREADS : Thread::new);
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Plays the game to the end once the cards have been dealt, with every turn taken on the calling thread in the
+     * order of a schedule, and no locks. Players seeded with the same seed, given the same schedule, always play the
+     * same game and write the same output files. A generated schedule is played until a player wins, skipping the
+     * turns it gives to players who cannot take one.
+     * A recorded schedule replays its game, and must be given the pack and discard strategy of the recorded game; its
+     * seed, if known, is used to seed the players. Every turn recorded is played, including those which neighbours
+     * of the winner were finishing as they won, and the first winning turn decides the winner.
+     *
+     * @param schedule The order in which the players take turns
+     * @return The index of the winning player (zero-indexed), or -1 if the schedule ended without a winner
+     * @throws IllegalStateException if a turn of a recorded schedule cannot be taken, as the game is not the one
+     *                               that was recorded
+     */
+    public int playDeterministic(TurnSchedule schedule) {
+        if (schedule.getSeed() != null) {
+            setRandomSeed(schedule.getSeed());
+        }
+        checkWinners();
+        if (isOver) {
+            return winner; // won on the deal, and the exits already written
+        }
+
+        while ((!isOver || schedule.isRecorded()) && schedule.hasNext()) {
+            int player = schedule.next();
+            if (!canTakeTurn(player)) {
+                boolean emptyDrawDeck = decks.get(player).isEmpty();
+                endDeckWait(startDeckWait(player, emptyDrawDeck), player, emptyDrawDeck); // skipped rather than waited
+                if (schedule.isRecorded()) {
+                    throw new IllegalStateException("Player " + (player + 1) + " cannot take turn "
+                            + schedule.getPosition() + " of the schedule");
+                }
+                continue;
+            }
+            drawCard(player);
+            discardCard(player);
+            endTurn(player);
+            if (metrics != null) {
+                metrics.countWinChecks(1);
+                metrics.endTurn(player, 0, 0); // counted, but with no locks there is nothing to time
+            }
+            if (winner == -1 && players.get(player).checkWin()) {
+                claimWin(player);
+            }
+            isOver = winner != -1;
+        }
+        isOver = true;
+        writeExitsInFile();
+        return winner;
+    }
+
+    /**
+     * Plays the game with each player taking turns on its own thread.
+     *
+     * @param threadFactory Creates the thread of each player
+     * @throws InterruptedException if interrupted while waiting for the players to exit
+     */
+    private void playOnThreads(ThreadFactory threadFactory) throws InterruptedException {
+        Thread[] threads = new Thread[numberOfPlayers];
+        int started = 0;
+        try {
+            for (int i = 1; i <= numberOfPlayers; i++) {
+                threads[i - 1] = threadFactory.newThread(this);
+                threads[i - 1].setName("thread" + i);
+                threads[i - 1].start();
+                started++;
+            }
+        } catch (RuntimeException | OutOfMemoryError e) { // Caught if the system cannot create another thread
+            endWithoutWinner(); // The players already started would otherwise wait for the others forever
+            for (int i = 0; i < started; i++) {
+                threads[i].join();
+            }
+            throw e;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Plays the game with the players sharing a fixed pool of threads. A player takes turns on a pool thread until
+     * it has taken a few, then queues up behind the other players, so that no player holds on to a thread that
+     * another player needs to refill its deck. A player who cannot take a turn is parked on the deck that stopped
+     * them, off the pool's queue, until the neighbour who changes it resubmits them.
+     *
+     * @throws InterruptedException if interrupted while waiting for the players to exit
+     */
+    private void playOnPool() throws InterruptedException {
+        CountDownLatch exited = new CountDownLatch(numberOfPlayers);
+        AtomicInteger poolThreads = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(poolSize,
+                runnable -> new Thread(runnable, "player-pool-" + poolThreads.incrementAndGet()));
+        PooledPlayer[] pooledPlayers = new PooledPlayer[numberOfPlayers];
+        try {
+            for (int i = 0; i < numberOfPlayers; i++) {
+                pooledPlayers[i] = new PooledPlayer(i, pool, exited);
+                pool.execute(pooledPlayers[i]);
+            }
+            exited.await();
+        } finally {
+            endWithoutWinner(); // Only has an effect if the game did not finish
+            pool.shutdownNow();
+        }
+        for (PooledPlayer pooledPlayer : pooledPlayers) {
+            if (pooledPlayer.failure != null) {
+                throw pooledPlayer.failure;
+            }
+        }
+    }
+
+    /**
+     * Gets a factory of virtual threads, found by reflection so that the game still runs on Java 17.
+     *
+     * @return The factory of virtual threads, or null if this Java has no virtual threads
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) { // Caught before Java 21, or on Java 19 and 20 without preview
+            return null;
+        }
+    }
 
-        while (!isOver) {
-            gameplay(player);
+    /**
+     * A player taking turns as a task on a pool of threads shared by the players.
+     */
+    private final class PooledPlayer implements Runnable {
+        private final int playerIndex;
+        private final ExecutorService pool;
+        private final CountDownLatch exited;
+        private volatile RuntimeException failure;
+        private FlightEvents.DeckStarved deckWait; // null unless the player is parked while waits are recorded
+        private boolean emptyDrawDeck;
+        private boolean requeued; // true once the player has queued up again after failing to take a turn
 
+        private PooledPlayer(int playerIndex, ExecutorService pool, CountDownLatch exited) {
+            this.playerIndex = playerIndex;
+            this.pool = pool;
+            this.exited = exited;
+        }
+
+        @Override
+        public void run() {
+            if (deckWait != null) { // resubmitted by the neighbour who changed the deck, or by the end of the game
+                endDeckWait(deckWait, playerIndex, emptyDrawDeck);
+                deckWait = null;
+            }
+            try {
+                boolean taken = true;
+                for (int turns = 0; turns < TURNS_PER_TASK && taken && !isOver; turns++) {
+                    taken = turnLocking == TurnLocking.STRIPED
+                            ? takeStripedTurn(playerIndex)
+                            : monitorTurn(playerIndex);
+                }
+                if (!isOver) {
+                    // A player who cannot take a turn first queues up again, as a neighbour already queued often
+                    // changes the deck before the player's turn comes round, and is parked if they still cannot
+                    if (taken || !requeued) {
+                        requeued = !taken;
+                        pool.execute(this);
+                    } else {
+                        requeued = false; // written before the player is parked, and so possibly resubmitted
+                        if (!parkPlayer(this)) {
+                            pool.execute(this);
+                        }
+                    }
+                    return; // a parked player is resubmitted once its deck changes, from whichever thread changes it
+                }
+                if (turnLocking == TurnLocking.STRIPED) { // under monitor locking the winner writes every exit
+                    writePlayerExitInFile(playerIndex);
+                }
+            } catch (RuntimeException e) {
+                failure = e;
+                endWithoutWinner();
+            }
+            exited.countDown();
         }
     }
 
-    public static void main(String[] args)  {
+    public static void main(String[] args) throws InterruptedException {
         String stringNumberOfPlayers = "";
         String packFileName = "";
 
         CardGame play = new CardGame();
+        int eventQueueCapacity = 4096;
+        Long seed = null;
+        DiscardStrategy discardStrategy = DiscardStrategy.BuiltIn.RANDOM;
+        String schedule = null;
+        String recordedScheduleFile = null;
+        PackGenerator packGenerator = null;
+        long metricsPeriodMillis = -1; // -1 when the game is not measured, 0 for a summary only at the end
+        String flightRecordingFile = null;
+        String journalFile = null;
+        for (String arg : args) {
+            if (arg.startsWith("--locking=")) { // e.g. --locking=monitor to take turns under the game monitor
+                play.setTurnLocking(TurnLocking.valueOf(arg.substring("--locking=".length()).toUpperCase()));
+            } else if (arg.startsWith("--flush=")) { // --flush=turn, --flush=exit or --flush=events:N
+                String policy = arg.substring("--flush=".length());
+                if (policy.startsWith("events:")) {
+                    play.setFlushPolicy(GameLog.FlushPolicy.EVERY_N_EVENTS, Integer.parseInt(policy.substring("events:".length())));
+                } else if (policy.equals("turn")) {
+                    play.setFlushPolicy(GameLog.FlushPolicy.PER_TURN, 0);
+                } else if (policy.equals("exit")) {
+                    play.setFlushPolicy(GameLog.FlushPolicy.ON_EXIT, 0);
+                } else {
+                    throw new IllegalArgumentException("Unknown flush policy: " + policy);
+                }
+            } else if (arg.equals("--sync-log")) { // players write their own events, instead of a background thread
+                eventQueueCapacity = 0;
+            } else if (arg.startsWith("--event-queue=")) {
+                eventQueueCapacity = Integer.parseInt(arg.substring("--event-queue=".length()));
+            } else if (arg.startsWith("--seed=")) { // seeds the discards of the players
+                seed = Long.parseLong(arg.substring("--seed=".length()));
+            } else if (arg.startsWith("--threads=")) { // --threads=platform, --threads=virtual or --threads=pool:N
+                String threads = arg.substring("--threads=".length());
+                if (threads.startsWith("pool:")) {
+                    play.setPlayerThreads(PlayerThreads.POOLED, Integer.parseInt(threads.substring("pool:".length())));
+                } else {
+                    play.setPlayerThreads(PlayerThreads.valueOf(threads.toUpperCase()), 0);
+                }
+            } else if (arg.startsWith("--strategy=")) { // e.g. --strategy=keep_most_frequent
+                discardStrategy = DiscardStrategy.BuiltIn.valueOf(arg.substring("--strategy=".length()).toUpperCase());
+            } else if (arg.startsWith("--schedule=")) { // --schedule=round_robin, random or a recorded schedule file
+                schedule = arg.substring("--schedule=".length());
+            } else if (arg.startsWith("--record-schedule=")) { // writes the order of the turns taken to a file
+                recordedScheduleFile = arg.substring("--record-schedule=".length());
+            } else if (arg.startsWith("--generate=")) { // deals a generated pack, e.g. --generate=win_in_k:3
+                packGenerator = PackGenerator.parse(arg.substring("--generate=".length()));
+                if (packGenerator.getLayout() == PackGenerator.Layout.NEVER_WINNABLE) {
+                    throw new IllegalArgumentException("A game dealt a pack nobody can win would never end");
+                }
+            } else if (arg.equals("--metrics")) { // prints the metrics of the game once it is over
+                metricsPeriodMillis = 0;
+            } else if (arg.startsWith("--metrics=")) { // and every given number of milliseconds while it is played
+                metricsPeriodMillis = Long.parseLong(arg.substring("--metrics=".length()));
+            } else if (arg.startsWith("--jfr=")) { // writes a flight recording of the game's events to a file
+                flightRecordingFile = arg.substring("--jfr=".length());
+            } else if (arg.startsWith("--provenance=")) { // writes the moves of every card to a journal file
+                journalFile = arg.substring("--provenance=".length());
+            } else if (arg.startsWith("--output=")) { // --output=files, files:DIR, mmap:FILE, memory or null
+                OutputSink sink = OutputSink.parse(arg.substring("--output=".length()), OUTPUT_DIRECTORY_PATH);
+                if (sink instanceof OutputSink.Files files) {
+                    play.setOutputDirectory(files.getDirectory());
+                } else {
+                    play.setOutputSink(sink);
+                }
+            }
+        }
+        if (seed == null && (schedule != null || recordedScheduleFile != null)) {
+            seed = new SplittableRandom().nextLong(); // a game can only be repeated if its players are seeded
+        }
+        if (packGenerator != null) {
+            long packSeed = seed != null ? seed : new SplittableRandom().nextLong();
+            System.out.println("Dealing a " + packGenerator.getLayout().name().toLowerCase() + " pack of seed " + packSeed);
+            play.setPackGenerator(packGenerator, packSeed);
+        }
+        play.setAsyncEventLog(eventQueueCapacity, GameEventWriter.Backpressure.SPIN_THEN_BLOCK);
         play.setup(stringNumberOfPlayers, packFileName, false);
+        if (seed != null) {
+            play.setRandomSeed(seed);
+        }
+        play.setDiscardStrategy(discardStrategy);
+        if (metricsPeriodMillis >= 0) {
+            play.setMetrics(new GameMetrics(play.getPlayers().size(), GameMetrics.DEFAULT_SAMPLE_INTERVAL));
+            if (metricsPeriodMillis > 0) {
+                play.getMetrics().startReporting(metricsPeriodMillis, System.out);
+            }
+        }
+        if (journalFile != null) {
+            play.setJournal(new CardJournal(play.getPlayers().size()));
+        }
+        Recording flightRecording = flightRecordingFile != null ? FlightEvents.record() : null;
         play.dealCards();
-        play.checkWinners();
-
-        if(!play.isOver){ // If no one wins the game with their initial hand, the game begins
-            for (int i = 1; i <= play.numberOfPlayers; i++) {
-                Thread t = new Thread(play, "thread" + i);
-                t.start();
+        if (schedule == null) {
+            if (recordedScheduleFile != null) {
+                play.recordSchedule();
+            }
+            play.play();
+            if (recordedScheduleFile != null) {
+                play.getRecordedSchedule().writeToFile(recordedScheduleFile);
+            }
+        } else if (schedule.equalsIgnoreCase("round_robin")) {
+            play.playDeterministic(TurnSchedule.roundRobin(play.getPlayers().size()));
+        } else if (schedule.equalsIgnoreCase("random")) {
+            play.playDeterministic(TurnSchedule.random(play.getPlayers().size(), seed));
+        } else {
+            try {
+                play.playDeterministic(TurnSchedule.readFromFile(schedule));
+            } catch (IOException e) { // Caught if the schedule file cannot be read
+                throw new RuntimeException(e);
             }
         }
+        if (play.getMetrics() != null) {
+            play.getMetrics().stopReporting();
+            System.out.print(play.getMetrics().snapshot());
+        }
+        if (flightRecording != null) {
+            FlightEvents.dump(flightRecording, flightRecordingFile);
+        }
+        if (journalFile != null) {
+            play.getJournal().writeToFile(journalFile);
+        }
     }
 
+    /**
+     * The threads the players can take their turns on.
+     */
+    public enum PlayerThreads {
+        /** Every player has its own platform thread. */
+        PLATFORM,
+        /** Every player has its own virtual thread, which needs Java 21, see hasVirtualThreads. */
+        VIRTUAL,
+        /** The players share a fixed pool of platform threads, taking a few turns at a time. */
+        POOLED
+    }
 
+    /**
+     * The ways in which a player's turn can be made atomic.
+     */
+    public enum TurnLocking {
+        /** Every turn holds the monitor of the whole game. */
+        MONITOR,
+        /** A turn holds only the locks of the player's draw deck and discard deck. */
+        STRIPED
+    }
 }
-
-
-
@@ -0,0 +1,428 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every move of every card in a game, from the deal to the end, so that the path any card took round the
+ * table can be rebuilt once the game is over. A card is known by its position in the pack, from 0 at the top.
+ *
+ * While the game is played, only what cannot be worked out afterwards is recorded: which card of their hand each
+ * player discarded on each turn, one byte a turn, appended by the thread taking the player's turns to chunks of the
+ * player's own, so recording takes no lock and allocates nothing but a new chunk every few thousand turns. The rest
+ * follows from the rules, since the deal is always in the same order, every turn draws the top card of the player's
+ * deck, and a deck hands out its cards in the order they were added. Once the game is over the turns are replayed
+ * into a journal of longs for each player, each entry packing the turn number in its high 32 bits, the kind of move
+ * in the next 2 bits and the card in the low 30 bits. Where a move takes a card from and to follows from the kind of
+ * move and the player whose journal holds it: a player draws from their own deck into their hand, and discards from
+ * their hand to the next player's deck, and the cards dealt to a deck are journaled by the player who draws from it.
+ *
+ * Usage: CardJournal FILE [CARD...]
+ *        prints the path of each card given, or of every card, from a journal written by a game played with
+ *        --provenance=FILE
+ */
+public class CardJournal {
+    private static final int MAGIC = 0x434A4E4C; // "CJNL"
+    private static final int VERSION = 1;
+    private static final int CARD_BITS = 30;
+    private static final long CARD_MASK = (1L << CARD_BITS) - 1;
+    private static final int MAX_HAND_SIZE = 5;
+    private static final int FIRST_CHUNK = 16;
+    private static final int MAX_CHUNK = 16384;
+
+    private final int numberOfPlayers;
+    private final Seat[] seats; // null if the journal was read from a file
+    private byte[][] discards; // the hand index discarded on each turn of each player, gathered once queried
+    private long[][] entries; // the moves of each player, replayed once queried
+
+    /**
+     * Constructs an empty journal for a game, to be given to the game before its cards are dealt.
+     *
+     * @param numberOfPlayers The number of players in the game
+     * @throws IllegalArgumentException if the game has more cards than a journal entry can tell apart
+     */
+    public CardJournal(int numberOfPlayers){
+        if (8L * numberOfPlayers > CARD_MASK + 1) {
+            throw new IllegalArgumentException("A journal cannot tell apart the cards of " + numberOfPlayers
+                    + " players");
+        }
+        this.numberOfPlayers = numberOfPlayers;
+        this.seats = new Seat[numberOfPlayers];
+        for (int player = 0; player < numberOfPlayers; player++) {
+            seats[player] = new Seat();
+        }
+    }
+
+    private CardJournal(byte[][] discards){
+        this.numberOfPlayers = discards.length;
+        this.seats = null;
+        this.discards = discards;
+    }
+
+    /**
+     * Records a turn of a player, once they have discarded. The caller must hold the locks of the player's turn.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @param handIndex The position in the player's hand of the card discarded, as the player held it
+     */
+    public void recordTurn(int player, int handIndex){
+        seats[player].append((byte) handIndex);
+    }
+
+    /**
+     * Gets the number of moves recorded.
+     *
+     * @return The number of moves, including the cards dealt
+     */
+    public long getMoveCount(){
+        long moves = 0;
+        for (long[] journal : entries()) {
+            moves += journal.length;
+        }
+        return moves;
+    }
+
+    /**
+     * Replays the turns recorded into the moves of every card, once the game is over and the journal is queried.
+     * Players are replayed as far as the cards in their decks allow, each discard letting the next player go on,
+     * which always gets every player through every turn they took, as the game itself did.
+     */
+    private synchronized long[][] entries(){
+        if (entries != null) {
+            return entries;
+        }
+        byte[][] discards = discards();
+        int n = numberOfPlayers;
+        entries = new long[n][];
+        int[] sizes = new int[n];
+        int[] hands = new int[n * MAX_HAND_SIZE];
+        int[] handSizes = new int[n];
+        int[][] decks = new int[n][];
+        int[] deckHeads = new int[n];
+        int[] deckTails = new int[n];
+        for (int player = 0; player < n; player++) {
+            entries[player] = new long[8 + 2 * discards[player].length];
+            decks[(player + 1) % n] = new int[4 + discards[player].length]; // dealt cards, then the discards
+        }
+        for (int round = 0; round < 4; round++) {
+            for (int player = 0; player < n; player++) {
+                int card = round * n + player;
+                hands[player * MAX_HAND_SIZE + handSizes[player]++] = card;
+                entries[player][sizes[player]++] = entry(0, Move.DEALT_TO_HAND, card);
+            }
+        }
+        for (int round = 0; round < 4; round++) {
+            for (int deck = 0; deck < n; deck++) {
+                int card = 4 * n + round * n + deck;
+                decks[deck][deckTails[deck]++] = card;
+                entries[deck][sizes[deck]++] = entry(0, Move.DEALT_TO_DECK, card);
+            }
+        }
+
+        int[] turnsReplayed = new int[n];
+        int[] waiting = new int[n]; // the players who may be able to go on, in a ring
+        boolean[] isWaiting = new boolean[n];
+        int first = 0;
+        int count = n;
+        for (int player = 0; player < n; player++) {
+            waiting[player] = player;
+            isWaiting[player] = true;
+        }
+        while (count > 0) {
+            int player = waiting[first];
+            first = (first + 1) % n;
+            count--;
+            isWaiting[player] = false;
+            int next = (player + 1) % n;
+            int hand = player * MAX_HAND_SIZE;
+            while (turnsReplayed[player] < discards[player].length && deckHeads[player] < deckTails[player]) {
+                int turn = ++turnsReplayed[player];
+                int drawn = decks[player][deckHeads[player]++];
+                hands[hand + handSizes[player]++] = drawn;
+                entries[player][sizes[player]++] = entry(turn, Move.DRAWN, drawn);
+                int index = discards[player][turn - 1];
+                int discarded = hands[hand + index];
+                System.arraycopy(hands, hand + index + 1, hands, hand + index, --handSizes[player] - index);
+                decks[next][deckTails[next]++] = discarded;
+                entries[player][sizes[player]++] = entry(turn, Move.DISCARDED, discarded);
+                if (!isWaiting[next]) {
+                    waiting[(first + count++) % n] = next;
+                    isWaiting[next] = true;
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static long entry(int turn, Move move, int card){
+        return (long) turn << 32 | (long) move.ordinal() << CARD_BITS | card;
+    }
+
+    /**
+     * Gathers the chunks of each player's turns into one array.
+     */
+    private synchronized byte[][] discards(){
+        if (discards == null) {
+            discards = new byte[numberOfPlayers][];
+            for (int player = 0; player < numberOfPlayers; player++) {
+                discards[player] = seats[player].toArray();
+            }
+        }
+        return discards;
+    }
+
+    /**
+     * Rebuilds the path a card took, from the deal to where it was when the game ended. Only to be called once the
+     * game is over.
+     *
+     * @param card The position of the card in the pack, from 0 at the top
+     * @return The moves of the card, in the order they were made
+     * @throws IllegalArgumentException if the card is not in the pack
+     */
+    public List<Step> pathOf(int card){
+        if (card < 0 || card >= 8 * numberOfPlayers) {
+            throw new IllegalArgumentException("Card " + card + " is not in a pack of " + 8 * numberOfPlayers);
+        }
+        long[][] entries = entries();
+        List<Step> path = new ArrayList<>();
+        int[] next = new int[numberOfPlayers]; // the first entry of each journal not yet searched
+        // A card in a hand is next moved by the player holding it, and a card in a deck by the player drawing from it
+        int player = card % numberOfPlayers;
+        Move expected = card < 4 * numberOfPlayers ? Move.DEALT_TO_HAND : Move.DEALT_TO_DECK;
+        while (true) {
+            long[] journal = entries[player];
+            int i = next[player];
+            while (i < journal.length && !(cardOf(journal[i]) == card && moveOf(journal[i]) == expected)) {
+                i++;
+            }
+            if (i == journal.length) {
+                return path;
+            }
+            next[player] = i + 1;
+            Step step = new Step(card, player, expected, (int) (journal[i] >>> 32), numberOfPlayers);
+            path.add(step);
+            if (expected == Move.DISCARDED) {
+                player = step.getTo();
+                expected = Move.DRAWN;
+            } else {
+                expected = expected == Move.DEALT_TO_DECK ? Move.DRAWN : Move.DISCARDED;
+            }
+        }
+    }
+
+    private static int cardOf(long entry){
+        return (int) (entry & CARD_MASK);
+    }
+
+    private static Move moveOf(long entry){
+        return Move.values()[(int) (entry >>> CARD_BITS) & 3];
+    }
+
+    /**
+     * Writes the journal to a file, to be queried once the game is over. Only the turns recorded are written, a byte
+     * each, as the moves are replayed from them when the file is queried.
+     *
+     * @param filePath The location of the file, replaced if it exists
+     * @throws RuntimeException if the file cannot be written
+     */
+    public void writeToFile(String filePath){
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filePath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(numberOfPlayers);
+            for (byte[] turns : discards()) {
+                out.writeInt(turns.length);
+                out.write(turns);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Reads a journal written by writeToFile, only to be queried.
+     *
+     * @param filePath The location of the file
+     * @return The journal
+     * @throws IOException if the file cannot be read, or is not a journal
+     */
+    public static CardJournal readFromFile(String filePath) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filePath)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(filePath + " is not a card journal");
+            }
+            byte[][] discards = new byte[in.readInt()][];
+            for (int player = 0; player < discards.length; player++) {
+                discards[player] = new byte[in.readInt()];
+                in.readFully(discards[player]);
+            }
+            return new CardJournal(discards);
+        }
+    }
+
+    /**
+     * Gets the number of players in the game journaled.
+     *
+     * @return The number of players
+     */
+    public int getNumberOfPlayers(){
+        return numberOfPlayers;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("Usage: CardJournal FILE [CARD...]");
+            return;
+        }
+        CardJournal journal = readFromFile(args[0]);
+        System.out.println(journal.getMoveCount() + " moves of " + 8 * journal.numberOfPlayers + " cards");
+        int cards = args.length > 1 ? args.length - 1 : 8 * journal.numberOfPlayers;
+        for (int i = 0; i < cards; i++) {
+            int card = args.length > 1 ? Integer.parseInt(args[i + 1]) : i;
+            System.out.println("Card " + card + ":");
+            for (Step step : journal.pathOf(card)) {
+                System.out.println("  " + step);
+            }
+        }
+    }
+
+    /**
+     * The turns of one player, in chunks which are never copied, only written by the thread taking the player's turns.
+     */
+    private static class Seat {
+        private byte[] chunk = new byte[FIRST_CHUNK];
+        private int position = 0; // the next turn of the chunk
+        private int turns = 0;
+        private final List<byte[]> chunks = new ArrayList<>(List.of(chunk));
+
+        private void append(byte handIndex){
+            if (position == chunk.length) {
+                chunk = new byte[Math.min(chunk.length * 2, MAX_CHUNK)];
+                chunks.add(chunk);
+                position = 0;
+            }
+            chunk[position++] = handIndex;
+            turns++;
+        }
+
+        private byte[] toArray(){
+            byte[] all = new byte[turns];
+            int size = 0;
+            for (byte[] full : chunks) {
+                int length = Math.min(full.length, turns - size);
+                System.arraycopy(full, 0, all, size, length);
+                size += length;
+            }
+            return all;
+        }
+    }
+
+    /**
+     * The kinds of move a card can make.
+     */
+    public enum Move {
+        /** Dealt from the pack to a player's hand. */
+        DEALT_TO_HAND,
+        /** Dealt from the pack to a deck. */
+        DEALT_TO_DECK,
+        /** Drawn by a player from their deck to their hand. */
+        DRAWN,
+        /** Discarded by a player from their hand to the next player's deck. */
+        DISCARDED
+    }
+
+    /**
+     * One move of a card on its path, with where it was taken from and to.
+     */
+    public static class Step {
+        private final int card;
+        private final int player;
+        private final Move move;
+        private final int turn;
+        private final int from;
+        private final int to;
+
+        private Step(int card, int player, Move move, int turn, int numberOfPlayers){
+            this.card = card;
+            this.player = player;
+            this.move = move;
+            this.turn = turn;
+            this.from = move == Move.DEALT_TO_HAND || move == Move.DEALT_TO_DECK ? -1 : player;
+            this.to = move == Move.DISCARDED ? (player + 1) % numberOfPlayers : player;
+        }
+
+        /**
+         * Gets the card moved.
+         *
+         * @return The position of the card in the pack, from 0 at the top
+         */
+        public int getCard(){
+            return card;
+        }
+
+        /**
+         * Gets the player who made the move, or drew from the deck the card was dealt to.
+         *
+         * @return The index of the player (zero-indexed)
+         */
+        public int getPlayer(){
+            return player;
+        }
+
+        /**
+         * Gets the kind of move.
+         *
+         * @return The move
+         */
+        public Move getMove(){
+            return move;
+        }
+
+        /**
+         * Gets the turn of the player the move was made in.
+         *
+         * @return The number of the player's turn, from 1, or 0 for the deal
+         */
+        public int getTurn(){
+            return turn;
+        }
+
+        /**
+         * Gets where the card was taken from, the player's deck for a draw or their hand for a discard.
+         *
+         * @return The index of the deck or player (zero-indexed), or -1 for the pack
+         */
+        public int getFrom(){
+            return from;
+        }
+
+        /**
+         * Gets where the card was put, a player's hand for a deal to a hand or a draw, or else a deck.
+         *
+         * @return The index of the player or deck (zero-indexed)
+         */
+        public int getTo(){
+            return to;
+        }
+
+        /**
+         * Gets a description of the move, numbering players and decks from 1 as the output files do.
+         *
+         * @return The description
+         */
+        @Override
+        public String toString(){
+            return switch (move) {
+                case DEALT_TO_HAND -> "dealt to player " + (to + 1);
+                case DEALT_TO_DECK -> "dealt to deck " + (to + 1);
+                case DRAWN -> "turn " + turn + " of player " + (player + 1) + ": drawn from deck " + (from + 1);
+                case DISCARDED -> "turn " + turn + " of player " + (player + 1) + ": discarded to deck " + (to + 1);
+            };
+        }
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.SplittableRandom;
+
+/**
+ * Chooses which card a player discards at the end of their turn. Strategies are called on the thread the player
+ * takes turns on, once per turn, so they must not allocate and must not keep references to the hand.
+ */
+public interface DiscardStrategy {
+
+    /**
+     * Chooses the card to discard from a hand of 5 cards.
+     *
+     * @param hand The values of the cards in the hand, in the order they were added, which must not be changed
+     * @param handSize The number of cards in the hand
+     * @param preferredValue The value the player collects, which must not be discarded
+     * @param downstreamValue The value preferred by the player who draws from the player's discard deck
+     * @param random The player's random number generator
+     * @return The index in the hand of a card which is not of the preferred value
+     */
+    int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random);
+
+    /**
+     * The strategies provided with the game.
+     */
+    enum BuiltIn implements DiscardStrategy {
+        /** Discards any card which is not of the preferred value, with equal chance. */
+        RANDOM {
+            @Override
+            public int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random) {
+                int candidates = 0;
+                for (int i = 0; i < handSize; i++) {
+                    candidates += hand[i] != preferredValue ? 1 : 0;
+                }
+                int skip = random.nextInt(candidates);
+                int index = 0;
+                while (hand[index] == preferredValue || skip-- > 0) {
+                    index++;
+                }
+                return index;
+            }
+        },
+        /** Discards the card held longest which is not of the preferred value. */
+        FIRST_NON_PREFERRED {
+            @Override
+            public int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random) {
+                int index = 0;
+                while (hand[index] == preferredValue) {
+                    index++;
+                }
+                return index;
+            }
+        },
+        /** Keeps the values the hand holds most of, discarding a card of the value it holds fewest of. */
+        KEEP_MOST_FREQUENT {
+            @Override
+            public int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random) {
+                int best = -1;
+                int bestScore = Integer.MIN_VALUE;
+                for (int i = 0; i < handSize; i++) {
+                    int matches = 0;
+                    for (int j = 0; j < handSize; j++) {
+                        matches += hand[j] == hand[i] ? 1 : 0;
+                    }
+                    int score = hand[i] == preferredValue ? Integer.MIN_VALUE : -matches;
+                    if (score > bestScore) {
+                        best = i;
+                        bestScore = score;
+                    }
+                }
+                return best;
+            }
+        },
+        /** Discards a card the downstream player prefers when there is one, otherwise the card held longest. */
+        FEED_DOWNSTREAM {
+            @Override
+            public int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random) {
+                return firstScoring(hand, handSize, preferredValue, downstreamValue, true);
+            }
+        },
+        /** Keeps back cards the downstream player prefers, discarding the card held longest of any other value. */
+        STARVE_DOWNSTREAM {
+            @Override
+            public int chooseDiscard(int[] hand, int handSize, int preferredValue, int downstreamValue, SplittableRandom random) {
+                return firstScoring(hand, handSize, preferredValue, downstreamValue, false);
+            }
+        };
+
+        /**
+         * Finds the card held longest out of those which best match, or avoid, the downstream player's value.
+         *
+         * @param matchDownstream True to favour cards of the downstream value, false to favour any other value
+         * @return The index of the chosen card
+         */
+        private static int firstScoring(int[] hand, int handSize, int preferredValue, int downstreamValue,
+                                        boolean matchDownstream) {
+            int best = -1;
+            int bestScore = Integer.MIN_VALUE;
+            for (int i = 0; i < handSize; i++) {
+                int score = (hand[i] == downstreamValue) == matchDownstream ? 1 : 0;
+                if (hand[i] == preferredValue) {
+                    score = Integer.MIN_VALUE;
+                }
+                if (score > bestScore) {
+                    best = i;
+                    bestScore = score;
+                }
+            }
+            return best;
+        }
+    }
+}
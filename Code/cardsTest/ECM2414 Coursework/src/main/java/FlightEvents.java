@@ -0,0 +1,153 @@
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.util.List;
+
+/**
+ * The Java Flight Recorder events of the game, so that a recording shows which players stall on which decks, and how
+ * long the locks of turns are held, next to the JVM's own events. Every event is disabled unless a recording enables
+ * it, by name or with record, and a disabled event costs nothing: its object is never committed and is removed by the
+ * JIT compiler's escape analysis. Players and decks are numbered from 1, as in the output files.
+ */
+public final class FlightEvents {
+    /** Every event of the game. */
+    public static final List<Class<? extends Event>> ALL = List.of(
+            Turn.class, DeckStarved.class, CardDiscarded.class, GameWon.class, OutputFlush.class);
+
+    private FlightEvents(){
+    }
+
+    /**
+     * Starts a recording of every event of the game, besides the JVM events of the default settings.
+     *
+     * @return The recording, to be dumped with dump
+     * @throws RuntimeException if the default settings cannot be read
+     */
+    public static Recording record(){
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration("default"));
+        } catch (IOException | ParseException e) {
+            throw new RuntimeException(e);
+        }
+        for (Class<? extends Event> event : ALL) {
+            recording.enable(event);
+        }
+        recording.start();
+        return recording;
+    }
+
+    /**
+     * Stops a recording and writes it to a file, to be opened with JDK Mission Control or the jfr tool.
+     *
+     * @param recording The recording started by record
+     * @param filePath The location of the recording file, replaced if it exists
+     * @throws RuntimeException if the file cannot be written
+     */
+    public static void dump(Recording recording, String filePath){
+        try (recording) {
+            recording.stop();
+            recording.dump(Path.of(filePath));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * A turn taken by a player, from when the player holds the locks of the turn until the turn is over, so that its
+     * duration is how long the turn lock, or the two deck locks, were held.
+     */
+    @Name("cardgame.Turn")
+    @Label("Turn")
+    @Category("Card Game")
+    @Description("A turn taken, for as long as its locks were held")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class Turn extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Draw Deck")
+        public int drawDeck;
+        @Label("Discard Deck")
+        public int discardDeck;
+    }
+
+    /**
+     * A player waiting for a neighbour, as the deck they draw from was empty or the deck they discard to was full,
+     * from when they start waiting until the deck has changed or the game is over.
+     */
+    @Name("cardgame.DeckStarved")
+    @Label("Deck Starved")
+    @Category("Card Game")
+    @Description("A wait for a neighbour, for lack of a card to draw or room for the discard")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class DeckStarved extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Deck")
+        @Description("The empty draw deck, or the full discard deck")
+        public int deck;
+        @Label("Empty Draw Deck")
+        public boolean emptyDrawDeck;
+    }
+
+    /**
+     * A card discarded by a player.
+     */
+    @Name("cardgame.CardDiscarded")
+    @Label("Card Discarded")
+    @Category("Card Game")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class CardDiscarded extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Deck")
+        public int deck;
+        @Label("Value")
+        public int value;
+    }
+
+    /**
+     * The end of a game won by a player.
+     */
+    @Name("cardgame.GameWon")
+    @Label("Game Won")
+    @Category("Card Game")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class GameWon extends Event {
+        @Label("Winner")
+        public int winner;
+        @Label("Turns Taken")
+        @Description("The turns taken by the winner")
+        public int turnsTaken;
+    }
+
+    /**
+     * A player's output file flushed to disk.
+     */
+    @Name("cardgame.OutputFlush")
+    @Label("Output Flush")
+    @Category("Card Game")
+    @Enabled(false)
+    @StackTrace(false)
+    public static final class OutputFlush extends Event {
+        @Label("Player")
+        public int player;
+        @Label("Lines")
+        @Description("The lines written since the last flush, when lines are counted")
+        public int lines;
+    }
+}
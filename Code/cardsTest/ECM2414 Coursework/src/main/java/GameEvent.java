@@ -0,0 +1,177 @@
+public class GameEvent {
+    // The fixed words of the lines, encoded once, each line starting with a line break
+    private static final byte[] PLAYER = OutputBuffer.ascii("\nPlayer ");
+    private static final byte[] DRAWS = OutputBuffer.ascii(" draws a ");
+    private static final byte[] FROM_DECK = OutputBuffer.ascii(" from deck ");
+    private static final byte[] DISCARDS = OutputBuffer.ascii(" discards a ");
+    private static final byte[] TO_DECK = OutputBuffer.ascii(" to deck ");
+    private static final byte[] CURRENT_HAND = OutputBuffer.ascii("'s current hand is ");
+    private static final byte[] WINS = OutputBuffer.ascii(" wins");
+    private static final byte[] HAS_INFORMED = OutputBuffer.ascii(" has informed player ");
+    private static final byte[] THAT_PLAYER = OutputBuffer.ascii(" that player ");
+    private static final byte[] HAS_WON = OutputBuffer.ascii(" has won");
+    private static final byte[] EXITS = OutputBuffer.ascii(" exits");
+    private static final byte[] FINAL_HAND = OutputBuffer.ascii(" final hand: ");
+
+    private final Type type;
+    private final int player;
+    private final int card;
+    private final int other;
+    private final int[] hand;
+
+    /**
+     * Constructs an event that happened to a player during the game.
+     *
+     * @param type The type of the event
+     * @param player The index of the player the event happened to (zero-indexed)
+     * @param card The value of the card drawn or discarded, unused by other events
+     * @param other The index of the deck drawn from or discarded to, or of the winner, depending on the type
+     * @param hand The values of the cards in the player's hand, for hand snapshots
+     */
+    private GameEvent(Type type, int player, int card, int other, int[] hand){
+        this.type = type;
+        this.player = player;
+        this.card = card;
+        this.other = other;
+        this.hand = hand;
+    }
+
+    /**
+     * Creates the event of a player drawing a card from a deck.
+     */
+    public static GameEvent draw(int player, int card, int deck){
+        return new GameEvent(Type.DRAW, player, card, deck, null);
+    }
+
+    /**
+     * Creates the event of a player discarding a card to a deck.
+     */
+    public static GameEvent discard(int player, int card, int deck){
+        return new GameEvent(Type.DISCARD, player, card, deck, null);
+    }
+
+    /**
+     * Creates a snapshot of a player's hand at the end of their turn.
+     */
+    public static GameEvent hand(int player, int[] hand){
+        return new GameEvent(Type.HAND, player, 0, 0, hand);
+    }
+
+    /**
+     * Creates the event of a player winning the game.
+     */
+    public static GameEvent win(int player){
+        return new GameEvent(Type.WIN, player, 0, player, null);
+    }
+
+    /**
+     * Creates the event of a player being informed that another player has won.
+     */
+    public static GameEvent informed(int player, int winner){
+        return new GameEvent(Type.INFORMED, player, 0, winner, null);
+    }
+
+    /**
+     * Creates the event of a player exiting the game.
+     */
+    public static GameEvent exit(int player){
+        return new GameEvent(Type.EXIT, player, 0, 0, null);
+    }
+
+    /**
+     * Creates a snapshot of a player's hand once they have exited the game.
+     */
+    public static GameEvent finalHand(int player, int[] hand){
+        return new GameEvent(Type.FINAL_HAND, player, 0, 0, hand);
+    }
+
+    /**
+     * Gets the type of the event.
+     *
+     * @return The event type
+     */
+    public Type getType(){
+        return type;
+    }
+
+    /**
+     * Gets the player the event happened to.
+     *
+     * @return The index of the player (zero-indexed)
+     */
+    public int getPlayer(){
+        return player;
+    }
+
+    /**
+     * Appends the line recording this event in the player's output file to a buffer.
+     *
+     * @param out The buffer of the player's output file
+     */
+    public void writeTo(OutputBuffer out){
+        switch (type) {
+            case DRAW -> writeDraw(out, player, card, other);
+            case DISCARD -> writeDiscard(out, player, card, other);
+            case HAND -> out.append(PLAYER).append(player + 1).append(CURRENT_HAND).appendHand(hand, hand.length);
+            case WIN -> out.append(PLAYER).append(player + 1).append(WINS);
+            case INFORMED -> out.append(PLAYER).append(other + 1).append(HAS_INFORMED).append(player + 1)
+                    .append(THAT_PLAYER).append(other + 1).append(HAS_WON);
+            case EXIT -> out.append(PLAYER).append(player + 1).append(EXITS);
+            case FINAL_HAND -> out.append(PLAYER).append(player + 1).append(FINAL_HAND).appendHand(hand, hand.length);
+        }
+    }
+
+    /**
+     * Appends the line of a player drawing a card from a deck, without creating the event.
+     *
+     * @param out The buffer of the player's output file
+     * @param player The index of the player (zero-indexed)
+     * @param card The value of the card drawn
+     * @param deck The index of the deck drawn from (zero-indexed)
+     */
+    public static void writeDraw(OutputBuffer out, int player, int card, int deck){
+        out.append(PLAYER).append(player + 1).append(DRAWS).append(card).append(FROM_DECK).append(deck + 1);
+    }
+
+    /**
+     * Appends the line of a player discarding a card to a deck, without creating the event.
+     *
+     * @param out The buffer of the player's output file
+     * @param player The index of the player (zero-indexed)
+     * @param card The value of the card discarded
+     * @param deck The index of the deck discarded to (zero-indexed)
+     */
+    public static void writeDiscard(OutputBuffer out, int player, int card, int deck){
+        out.append(PLAYER).append(player + 1).append(DISCARDS).append(card).append(TO_DECK).append(deck + 1);
+    }
+
+    /**
+     * Appends the line of a player's hand at the end of their turn, without creating the event or copying the hand.
+     *
+     * @param out The buffer of the player's output file
+     * @param player The index of the player (zero-indexed)
+     * @param holder The player
+     */
+    public static void writeHand(OutputBuffer out, int player, Player holder){
+        holder.appendHandTo(out.append(PLAYER).append(player + 1).append(CURRENT_HAND));
+    }
+
+    /**
+     * Gets the line recording this event in the player's output file.
+     *
+     * @return The line, starting with a line break as the output files have no trailing line break
+     */
+    @Override
+    public String toString(){
+        OutputBuffer line = new OutputBuffer(64);
+        writeTo(line);
+        return line.toString();
+    }
+
+    /**
+     * The types of event written to the player output files.
+     */
+    public enum Type {
+        DRAW, DISCARD, HAND, WIN, INFORMED, EXIT, FINAL_HAND
+    }
+}
@@ -0,0 +1,147 @@
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+public class GameEventWriter implements Runnable {
+    private static final int MAX_BATCH = 256;
+    private static final int SPINS_BEFORE_BLOCKING = 100;
+    private static final GameEvent SHUTDOWN = GameEvent.exit(-1); // never published by a player
+
+    private final GameLog log;
+    private final BlockingQueue<GameEvent> queue;
+    private final Backpressure backpressure;
+    private final Thread writerThread;
+    private final Thread shutdownHook;
+    private volatile RuntimeException failure;
+    private boolean shutdown = false;
+
+    /**
+     * Starts a background thread writing the events published by players to the game log.
+     * Events are written in the order they are published, so each player's events keep the order of their turns.
+     *
+     * @param log The game log the events are written to, closed by the writer when it shuts down
+     * @param capacity The most events that can wait to be written before publishing players are held back
+     * @param backpressure How a player publishing to a full queue is held back
+     */
+    public GameEventWriter(GameLog log, int capacity, Backpressure backpressure){
+        this.log = log;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.backpressure = backpressure;
+        this.writerThread = new Thread(this, "game-event-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+        // Drains the events still queued if the program exits before the game ends
+        this.shutdownHook = new Thread(this::shutdown, "game-event-writer-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Queues an event to be written to its player's output file.
+     *
+     * @param event The event to be written
+     * @throws IllegalStateException if the writer has failed, or been interrupted while waiting for space
+     */
+    public void publish(GameEvent event){
+        if (failure != null) {
+            throw new IllegalStateException("Game event writer has failed", failure);
+        }
+        if (backpressure == Backpressure.SPIN_THEN_BLOCK) {
+            for (int i = 0; i < SPINS_BEFORE_BLOCKING; i++) {
+                if (queue.offer(event)) {
+                    return;
+                }
+                Thread.onSpinWait();
+            }
+        }
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) { // Caught if the game is stopped while the queue is full
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted publishing a game event", e);
+        }
+    }
+
+    /**
+     * Writes every event published so far, then closes the game log. Returns once the log is closed.
+     *
+     * @throws RuntimeException if any event could not be written
+     */
+    public synchronized void shutdown(){
+        if (!shutdown) {
+            shutdown = true;
+            if (Thread.currentThread() != shutdownHook) {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            }
+            boolean interrupted = false;
+            while (writerThread.isAlive()) { // a writer which has failed takes nothing more from the queue
+                try {
+                    if (queue.offer(SHUTDOWN, 10, TimeUnit.MILLISECONDS)) {
+                        break;
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = true; // the events must still be drained
+                }
+            }
+            while (writerThread.isAlive()) {
+                try {
+                    writerThread.join();
+                } catch (InterruptedException e) {
+                    interrupted = true; // the events must still be drained
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Takes the queued events in batches and writes them, until the writer is shut down.
+     */
+    @Override
+    public void run(){
+        ArrayList<GameEvent> batch = new ArrayList<>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                for (GameEvent event : batch) {
+                    if (event == SHUTDOWN) {
+                        return;
+                    }
+                    log.writeEvent(event);
+                    if (event.getType() == GameEvent.Type.HAND) { // the last event of every turn
+                        log.endTurn(event.getPlayer());
+                    }
+                }
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            failure = new IllegalStateException("Game event writer was interrupted", e);
+        } catch (RuntimeException e) {
+            failure = e;
+        } finally {
+            try {
+                log.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    /**
+     * How a player is held back when the queue of events waiting to be written is full.
+     */
+    public enum Backpressure {
+        /** The player waits until the writer has made room. */
+        BLOCK,
+        /** The player retries briefly before waiting, avoiding a park and wake up for short stalls. */
+        SPIN_THEN_BLOCK
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Allocates the IDs of the players and decks of one game, so that games built at the same time,
+ * from different threads, never share or skip IDs. A game is set up by a single thread, so this class is not
+ * thread-safe itself.
+ */
+public class GameIds {
+    private int nextPlayerID = 0;
+    private int nextDeckID = 0;
+
+    /**
+     * Allocates the next player ID of the game, player IDs start from 0.
+     *
+     * @return The ID for a new player
+     */
+    public int nextPlayerID(){
+        return nextPlayerID++;
+    }
+
+    /**
+     * Allocates the next deck ID of the game, deck IDs start from 0.
+     *
+     * @return The ID for a new deck
+     */
+    public int nextDeckID(){
+        return nextDeckID++;
+    }
+
+    /**
+     * Resets all IDs, so that they are allocated from the start again.
+     */
+    public void reset(){
+        nextPlayerID = 0;
+        nextDeckID = 0;
+    }
+}
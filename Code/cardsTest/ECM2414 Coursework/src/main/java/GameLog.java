@@ -0,0 +1,299 @@
+import java.io.IOException;
+
+public class GameLog {
+    private static final int BUFFER_SIZE = 8192; // as a BufferedWriter's, a line past this is written out at once
+    private static final byte[] DECK = OutputBuffer.ascii("Deck ");
+    private static final byte[] CONTENTS = OutputBuffer.ascii(" contents: ");
+
+    private final OutputSink sink;
+    private final OutputBuffer[] playerBuffers; // the lines each player has written since they were last handed over
+    private final OutputBuffer deckBuffer = new OutputBuffer(256);
+    private final int[] unflushedLines;
+    private final FlushPolicy flushPolicy;
+    private final int eventsPerFlush;
+    private final long[] writes; // the writes to each player's file, counted to sample the ones timed
+    private GameMetrics metrics; // null unless the time taken by writes is measured
+
+    /**
+     * Opens the output files of every player and deck in a game, emptying any left from a previous game.
+     * The files stay open until the log is closed, so each line written is only formatted into the player's buffer.
+     *
+     * @param directory The location of the directory where the output files are to be written to
+     * @param numberOfPlayers The number of players, and so of decks, in the game
+     * @param flushPolicy When the lines written are flushed to the files
+     * @param eventsPerFlush The number of lines a player writes between flushes, used by FlushPolicy.EVERY_N_EVENTS
+     * @throws RuntimeException if any of the files cannot be opened
+     */
+    public GameLog(String directory, int numberOfPlayers, FlushPolicy flushPolicy, int eventsPerFlush){
+        this(new OutputSink.Files(directory), numberOfPlayers, flushPolicy, eventsPerFlush);
+    }
+
+    /**
+     * Opens the output of a game in a sink, emptying any left from a previous game. The sink stays open until the log
+     * is closed, and is handed each player's lines when the flush policy requires.
+     *
+     * @param sink Where the output is written
+     * @param numberOfPlayers The number of players, and so of decks, in the game
+     * @param flushPolicy When the lines written are handed to the sink
+     * @param eventsPerFlush The number of lines a player writes between flushes, used by FlushPolicy.EVERY_N_EVENTS
+     * @throws RuntimeException if the sink cannot be opened
+     */
+    public GameLog(OutputSink sink, int numberOfPlayers, FlushPolicy flushPolicy, int eventsPerFlush){
+        this.sink = sink;
+        this.playerBuffers = new OutputBuffer[numberOfPlayers];
+        this.unflushedLines = new int[numberOfPlayers];
+        this.flushPolicy = flushPolicy;
+        this.eventsPerFlush = eventsPerFlush;
+        this.writes = new long[numberOfPlayers];
+        for (int i = 0; i < numberOfPlayers; i++) {
+            playerBuffers[i] = new OutputBuffer(BUFFER_SIZE);
+        }
+        try {
+            sink.open(numberOfPlayers);
+        } catch (IOException e) { // Caught if the file path is not correct
+            close();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Gets the directory the log writes to.
+     *
+     * @return The location of the output directory, or null if the log is not written to output files
+     */
+    public String getDirectory(){
+        return sink instanceof OutputSink.Files files ? files.getDirectory() : null;
+    }
+
+    /**
+     * Gets where the log is written.
+     *
+     * @return The sink of the log
+     */
+    public OutputSink getSink(){
+        return sink;
+    }
+
+    /**
+     * Measures the time taken by a sample of the writes and flushes to the players' files.
+     *
+     * @param metrics The metrics the times are recorded in
+     */
+    public void setMetrics(GameMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    /**
+     * Writes a message to a player's output file, flushing it if the flush policy requires.
+     * Each player's file must only be written by one thread at a time.
+     *
+     * @param player The index of the player whose file is being written to (zero-indexed)
+     * @param sentence The message to be written
+     */
+    public void writePlayerMsg(int player, String sentence){
+        long start = startWrite(player);
+        playerBuffers[player].append(sentence);
+        endLine(player, start);
+    }
+
+    /**
+     * Writes the line of an event to its player's output file, flushing it if the flush policy requires.
+     * Each player's file must only be written by one thread at a time.
+     *
+     * @param event The event to be written
+     */
+    public void writeEvent(GameEvent event){
+        int player = event.getPlayer();
+        long start = startWrite(player);
+        event.writeTo(playerBuffers[player]);
+        endLine(player, start);
+    }
+
+    /**
+     * Writes the line of a player drawing a card to their output file, without creating an event.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @param card The value of the card drawn
+     * @param deck The index of the deck drawn from (zero-indexed)
+     */
+    public void writeDraw(int player, int card, int deck){
+        long start = startWrite(player);
+        GameEvent.writeDraw(playerBuffers[player], player, card, deck);
+        endLine(player, start);
+    }
+
+    /**
+     * Writes the line of a player discarding a card to their output file, without creating an event.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @param card The value of the card discarded
+     * @param deck The index of the deck discarded to (zero-indexed)
+     */
+    public void writeDiscard(int player, int card, int deck){
+        long start = startWrite(player);
+        GameEvent.writeDiscard(playerBuffers[player], player, card, deck);
+        endLine(player, start);
+    }
+
+    /**
+     * Writes the line of a player's hand at the end of their turn to their output file, without copying the hand.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @param holder The player
+     */
+    public void writeHand(int player, Player holder){
+        long start = startWrite(player);
+        GameEvent.writeHand(playerBuffers[player], player, holder);
+        endLine(player, start);
+    }
+
+    private void endLine(int player, long start){
+        try {
+            if (flushPolicy == FlushPolicy.EVERY_N_EVENTS && ++unflushedLines[player] >= eventsPerFlush) {
+                flush(player);
+            } else if (playerBuffers[player].size() >= BUFFER_SIZE) {
+                sink.writePlayer(player, playerBuffers[player]);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        endWrite(start);
+    }
+
+    /**
+     * Marks the end of a player's turn, flushing their file if the flush policy is FlushPolicy.PER_TURN.
+     *
+     * @param player The index of the player who has finished a turn (zero-indexed)
+     */
+    public void endTurn(int player){
+        if (flushPolicy == FlushPolicy.PER_TURN) {
+            flushPlayer(player);
+        }
+    }
+
+    private long startWrite(int player){
+        return metrics != null && metrics.isSampled(writes[player]++) ? System.nanoTime() : 0;
+    }
+
+    private void endWrite(long start){
+        if (start != 0) {
+            metrics.recordOutput(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Writes the contents of a deck to its output file.
+     *
+     * @param deck The index of the deck (zero-indexed)
+     * @param sentence The message describing the deck contents
+     */
+    public void writeDeckMsg(int deck, String sentence){
+        deckBuffer.append(sentence);
+        writeDeck(deck);
+    }
+
+    /**
+     * Writes the contents of a deck to its output file, as a list of the values in the order they would be drawn.
+     *
+     * @param deck The index of the deck (zero-indexed)
+     * @param contents The deck
+     */
+    public void writeDeckContents(int deck, CardDeck contents){
+        contents.appendCardsTo(deckBuffer.append(DECK).append(deck + 1).append(CONTENTS));
+        writeDeck(deck);
+    }
+
+    private void writeDeck(int deck){
+        try {
+            sink.writeDeck(deck, deckBuffer);
+        } catch (IOException e) {
+            deckBuffer.clear();
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Flushes all lines written so far by a player to their file, whatever the flush policy.
+     *
+     * @param player The index of the player (zero-indexed)
+     */
+    public void flushPlayer(int player){
+        long start = startWrite(player);
+        flush(player);
+        endWrite(start);
+    }
+
+    private void flush(int player){
+        FlightEvents.OutputFlush event = new FlightEvents.OutputFlush();
+        event.begin();
+        try {
+            drain(player);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        if (event.shouldCommit()) {
+            event.player = player + 1;
+            event.lines = unflushedLines[player];
+            event.commit();
+        }
+        unflushedLines[player] = 0;
+    }
+
+    /**
+     * Closes a player's output file, once they have exited the game.
+     *
+     * @param player The index of the player (zero-indexed)
+     */
+    public void closePlayer(int player){
+        try {
+            drain(player);
+            sink.closePlayer(player);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void drain(int player) throws IOException {
+        if (playerBuffers[player].size() > 0) { // a file already closed can still be flushed with nothing to write
+            sink.writePlayer(player, playerBuffers[player]);
+        }
+    }
+
+    /**
+     * Flushes every player's lines and closes the sink. Lines which fail to be written do not stop the other players'
+     * lines from being written, nor the sink from being closed.
+     *
+     * @throws RuntimeException if any of the lines could not be written, or the sink could not be closed
+     */
+    public void close(){
+        IOException failure = null;
+        for (int i = 0; i < playerBuffers.length; i++) {
+            try {
+                drain(i);
+            } catch (IOException e) {
+                playerBuffers[i].clear(); // the lines which could not be written are dropped
+                failure = e;
+            }
+        }
+        try {
+            sink.close(); // closing an already closed sink has no effect
+        } catch (IOException e) {
+            failure = e;
+        }
+        if (failure != null) {
+            throw new RuntimeException(failure);
+        }
+    }
+
+    /**
+     * When the lines written to the output files are flushed to disk, besides when the files are closed.
+     */
+    public enum FlushPolicy {
+        /** After every turn a player takes. */
+        PER_TURN,
+        /** After every N lines a player writes, each line being one game event. */
+        EVERY_N_EVENTS,
+        /** Only when the player exits the game. */
+        ON_EXIT
+    }
+}
@@ -0,0 +1,345 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts what happens in a game as it is played, and measures how long turns take, cheaply enough to be left on.
+ * Counting an event or recording a latency never allocates or locks: each player's counters are written only by the
+ * thread taking the player's turn, on cache lines of their own, and latencies go into fixed histograms. Only one turn
+ * in every sample interval of each player is timed, as reading the clock costs more than the rest of the metrics.
+ * Snapshots of the metrics can be taken at any time, while the game is played or once it is over.
+ */
+public class GameMetrics {
+    private static final int STRIDE = 8; // longs per player, so that players' counters share no cache line
+    private static final int TURNS = 0;
+    private static final int EMPTY_DECK_WAITS = 1;
+    private static final int FULL_DECK_WAITS = 2;
+    /** Times one turn in 16 of each player, which keeps the cost of the clock to a few nanoseconds a turn. */
+    public static final int DEFAULT_SAMPLE_INTERVAL = 16;
+
+    private final int numberOfPlayers;
+    private final AtomicLongArray playerCounters;
+    private final LongAdder winChecks = new LongAdder();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+    private final LatencyHistogram lockHold = new LatencyHistogram();
+    private final LatencyHistogram turn = new LatencyHistogram();
+    private final LatencyHistogram output = new LatencyHistogram();
+    private final int sampleMask;
+    private final long startNanos = System.nanoTime();
+    private Thread reporter; // null unless snapshots are being printed
+
+    /**
+     * Constructs the metrics of a game.
+     *
+     * @param numberOfPlayers The number of players in the game
+     * @param sampleInterval One turn in this many of each player is timed, a power of two, 1 to time every turn
+     * @throws IllegalArgumentException if the sample interval is not a power of two
+     */
+    public GameMetrics(int numberOfPlayers, int sampleInterval){
+        if (sampleInterval < 1 || Integer.bitCount(sampleInterval) != 1) {
+            throw new IllegalArgumentException("The sample interval must be a power of two, not " + sampleInterval);
+        }
+        this.numberOfPlayers = numberOfPlayers;
+        this.playerCounters = new AtomicLongArray(numberOfPlayers * STRIDE);
+        this.sampleMask = sampleInterval - 1;
+    }
+
+    /**
+     * Starts timing a turn, if it is one of the turns sampled.
+     *
+     * @param playerIndex The index of the player about to take a turn (zero-indexed)
+     * @return The time the turn started, or 0 if the turn is not timed
+     */
+    public long startTurn(int playerIndex){
+        if (!isSampled(playerCounters.getPlain(playerIndex * STRIDE + TURNS))) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        return now != 0 ? now : 1; // 0 marks a turn which is not timed
+    }
+
+    /**
+     * Checks whether an event is one of those timed, one in every sample interval.
+     *
+     * @param count The number of such events before this one
+     * @return True if the event should be timed
+     */
+    public boolean isSampled(long count){
+        return (count & sampleMask) == 0;
+    }
+
+    /**
+     * Counts a turn taken, and records how long it took if it was timed. Called by the player's thread once the turn
+     * is over, before its locks are released.
+     *
+     * @param playerIndex The index of the player who took the turn (zero-indexed)
+     * @param start The time returned by startTurn
+     * @param locked The time the locks of the turn were held, if the turn was timed
+     */
+    public void endTurn(int playerIndex, long start, long locked){
+        increment(playerIndex, TURNS);
+        if (start != 0) {
+            long end = System.nanoTime();
+            lockWait.record(locked - start);
+            lockHold.record(end - locked);
+            turn.record(end - start);
+        }
+    }
+
+    /**
+     * Counts a player starting to wait for a neighbour, as their draw deck was empty or their discard deck was full.
+     *
+     * @param playerIndex The index of the player (zero-indexed)
+     * @param emptyDrawDeck True if the draw deck was empty, false if the discard deck was full
+     */
+    public void countDeckWait(int playerIndex, boolean emptyDrawDeck){
+        increment(playerIndex, emptyDrawDeck ? EMPTY_DECK_WAITS : FULL_DECK_WAITS);
+    }
+
+    /**
+     * Counts hands checked for a win.
+     *
+     * @param hands The number of hands checked
+     */
+    public void countWinChecks(int hands){
+        winChecks.add(hands);
+    }
+
+    /**
+     * Records the time taken writing to an output file, for the writes sampled.
+     *
+     * @param nanos The time taken in nanoseconds
+     */
+    public void recordOutput(long nanos){
+        output.record(nanos);
+    }
+
+    private void increment(int playerIndex, int counter){
+        int index = playerIndex * STRIDE + counter;
+        playerCounters.setOpaque(index, playerCounters.getPlain(index) + 1); // only ever written by one thread
+    }
+
+    /**
+     * Takes a snapshot of the metrics so far.
+     *
+     * @return The snapshot
+     */
+    public Snapshot snapshot(){
+        long[][] counters = new long[3][numberOfPlayers];
+        for (int player = 0; player < numberOfPlayers; player++) {
+            for (int counter = 0; counter < counters.length; counter++) {
+                counters[counter][player] = playerCounters.getOpaque(player * STRIDE + counter);
+            }
+        }
+        return new Snapshot(System.nanoTime() - startNanos, counters[TURNS], counters[EMPTY_DECK_WAITS],
+                counters[FULL_DECK_WAITS], winChecks.sum(), lockWait.copy(), lockHold.copy(), turn.copy(),
+                output.copy());
+    }
+
+    /**
+     * Prints what happened in every period of the game, until stopReporting is called, on a daemon thread.
+     *
+     * @param periodMillis The time between snapshots in milliseconds
+     * @param out The stream to print the snapshots to
+     */
+    public synchronized void startReporting(long periodMillis, PrintStream out){
+        stopReporting();
+        reporter = new Thread(() -> {
+            Snapshot previous = snapshot();
+            try {
+                while (!Thread.currentThread().isInterrupted()) {
+                    Thread.sleep(periodMillis);
+                    Snapshot current = snapshot();
+                    out.print(current.since(previous));
+                    previous = current;
+                }
+            } catch (InterruptedException e) { // Thrown when reporting is stopped
+            }
+        }, "metrics-reporter");
+        reporter.setDaemon(true);
+        reporter.start();
+    }
+
+    /**
+     * Stops printing snapshots, waiting for the snapshot being printed if there is one.
+     */
+    public synchronized void stopReporting(){
+        if (reporter != null) {
+            reporter.interrupt();
+            try {
+                reporter.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            reporter = null;
+        }
+    }
+
+    /**
+     * The metrics of a game at one moment, or over a period between two moments.
+     */
+    public static class Snapshot {
+        private final long elapsedNanos;
+        private final long[] turns;
+        private final long[] emptyDeckWaits;
+        private final long[] fullDeckWaits;
+        private final long winChecks;
+        private final LatencyHistogram lockWait;
+        private final LatencyHistogram lockHold;
+        private final LatencyHistogram turn;
+        private final LatencyHistogram output;
+
+        private Snapshot(long elapsedNanos, long[] turns, long[] emptyDeckWaits, long[] fullDeckWaits,
+                         long winChecks, LatencyHistogram lockWait, LatencyHistogram lockHold,
+                         LatencyHistogram turn, LatencyHistogram output){
+            this.elapsedNanos = elapsedNanos;
+            this.turns = turns;
+            this.emptyDeckWaits = emptyDeckWaits;
+            this.fullDeckWaits = fullDeckWaits;
+            this.winChecks = winChecks;
+            this.lockWait = lockWait;
+            this.lockHold = lockHold;
+            this.turn = turn;
+            this.output = output;
+        }
+
+        /**
+         * Gets what happened between an earlier snapshot and this one.
+         *
+         * @param earlier The earlier snapshot of the same game
+         * @return The metrics of the period in between
+         */
+        public Snapshot since(Snapshot earlier){
+            return new Snapshot(elapsedNanos - earlier.elapsedNanos, minus(turns, earlier.turns),
+                    minus(emptyDeckWaits, earlier.emptyDeckWaits), minus(fullDeckWaits, earlier.fullDeckWaits),
+                    winChecks - earlier.winChecks, lockWait.minus(earlier.lockWait),
+                    lockHold.minus(earlier.lockHold), turn.minus(earlier.turn), output.minus(earlier.output));
+        }
+
+        private static long[] minus(long[] later, long[] earlier){
+            long[] difference = new long[later.length];
+            for (int i = 0; i < later.length; i++) {
+                difference[i] = later[i] - earlier[i];
+            }
+            return difference;
+        }
+
+        private static long sum(long[] counts){
+            long total = 0;
+            for (long count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        /**
+         * Gets the time covered by the snapshot, from the start of the game or of the period.
+         *
+         * @return The time in nanoseconds
+         */
+        public long getElapsedNanos(){
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the number of turns taken by each player.
+         *
+         * @return The turns, indexed by player (zero-indexed)
+         */
+        public long[] getTurns(){
+            return turns.clone();
+        }
+
+        /**
+         * Gets the number of times each player waited for a neighbour as their draw deck was empty.
+         *
+         * @return The waits, indexed by player (zero-indexed)
+         */
+        public long[] getEmptyDeckWaits(){
+            return emptyDeckWaits.clone();
+        }
+
+        /**
+         * Gets the number of times each player waited for a neighbour as their discard deck was full.
+         *
+         * @return The waits, indexed by player (zero-indexed)
+         */
+        public long[] getFullDeckWaits(){
+            return fullDeckWaits.clone();
+        }
+
+        /**
+         * Gets the number of hands checked for a win.
+         *
+         * @return The number of checks
+         */
+        public long getWinChecks(){
+            return winChecks;
+        }
+
+        /**
+         * Gets the time players waited for the locks of their turns, for the turns timed.
+         *
+         * @return The latencies in nanoseconds
+         */
+        public LatencyHistogram getLockWait(){
+            return lockWait;
+        }
+
+        /**
+         * Gets the time players held the locks of their turns, for the turns timed.
+         *
+         * @return The latencies in nanoseconds
+         */
+        public LatencyHistogram getLockHold(){
+            return lockHold;
+        }
+
+        /**
+         * Gets the time taken by whole turns, from waiting for the locks to the end of the turn, for the turns timed.
+         *
+         * @return The latencies in nanoseconds
+         */
+        public LatencyHistogram getTurn(){
+            return turn;
+        }
+
+        /**
+         * Gets the time taken by writes and flushes to the output files, for the writes timed.
+         *
+         * @return The latencies in nanoseconds
+         */
+        public LatencyHistogram getOutput(){
+            return output;
+        }
+
+        /**
+         * Gets the summary of the snapshot, as printed at the end of a game and for each period of a long game.
+         *
+         * @return The metrics, one per line
+         */
+        @Override
+        public String toString(){
+            long totalTurns = sum(turns);
+            long fewest = Long.MAX_VALUE;
+            long most = 0;
+            for (long playerTurns : turns) {
+                fewest = Math.min(fewest, playerTurns);
+                most = Math.max(most, playerTurns);
+            }
+            StringBuilder summary = new StringBuilder();
+            summary.append(String.format("Metrics over %.3f s%n", elapsedNanos / 1e9));
+            summary.append(String.format("  turns: %d (%.0f/s), per player min %d, mean %.1f, max %d%n", totalTurns,
+                    totalTurns * 1e9 / Math.max(elapsedNanos, 1), turns.length == 0 ? 0 : fewest,
+                    turns.length == 0 ? 0 : (double) totalTurns / turns.length, most));
+            summary.append(String.format("  waits: %d on an empty draw deck, %d on a full discard deck%n",
+                    sum(emptyDeckWaits), sum(fullDeckWaits)));
+            summary.append(String.format("  hands checked for a win: %d%n", winChecks));
+            summary.append(String.format("  lock wait ns:  %s%n", lockWait));
+            summary.append(String.format("  lock hold ns:  %s%n", lockHold));
+            summary.append(String.format("  turn ns:       %s%n", turn));
+            summary.append(String.format("  output ns:     %s%n", output));
+            return summary.toString();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts latencies in nanoseconds in a fixed set of log-linear buckets, in the manner of an HDR histogram. Every
+ * power of two is split into 32 buckets, so a bucket is never wider than about 3% of the values it holds, from 1 ns
+ * up to about 18 minutes, beyond which values count in the last bucket. Recording a value increments one bucket,
+ * from any thread, without locking or allocating.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS; // values below this have a bucket each
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int MAX_BITS = 40;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS) * HALF;
+
+    private final AtomicLongArray counts;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    public LatencyHistogram(){
+        this.counts = new AtomicLongArray(BUCKETS);
+    }
+
+    private LatencyHistogram(AtomicLongArray counts){
+        this.counts = counts;
+    }
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos The latency in nanoseconds, negative latencies counting as 0
+     */
+    public void record(long nanos){
+        counts.getAndIncrement(bucketOf(nanos));
+    }
+
+    /**
+     * Copies the counts of the histogram, for reading while other threads keep recording. Counts recorded during
+     * the copy may or may not be included.
+     *
+     * @return The copy
+     */
+    public LatencyHistogram copy(){
+        AtomicLongArray copied = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            copied.setPlain(i, counts.get(i));
+        }
+        return new LatencyHistogram(copied);
+    }
+
+    /**
+     * Gets the latencies recorded since an earlier copy of this histogram.
+     *
+     * @param earlier The earlier copy
+     * @return A histogram of the latencies recorded in between
+     */
+    public LatencyHistogram minus(LatencyHistogram earlier){
+        AtomicLongArray difference = new AtomicLongArray(BUCKETS);
+        for (int i = 0; i < BUCKETS; i++) {
+            difference.setPlain(i, counts.get(i) - earlier.counts.get(i));
+        }
+        return new LatencyHistogram(difference);
+    }
+
+    /**
+     * Gets the number of latencies recorded.
+     *
+     * @return The count
+     */
+    public long getCount(){
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Gets the latency which a percentage of the latencies recorded are at or below, to the precision of a bucket.
+     *
+     * @param percentile The percentage, from 0 to 100
+     * @return The highest latency of the bucket holding the percentile, or 0 if nothing was recorded
+     */
+    public long getValueAtPercentile(double percentile){
+        long count = getCount();
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= rank) {
+                return highestValueOf(i);
+            }
+        }
+        return highestValueOf(BUCKETS - 1);
+    }
+
+    /**
+     * Gets the highest latency recorded, to the precision of a bucket.
+     *
+     * @return The highest latency of the highest bucket counted, or 0 if nothing was recorded
+     */
+    public long getMax(){
+        for (int i = BUCKETS - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) {
+                return highestValueOf(i);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the mean latency, taking every latency as the middle of its bucket.
+     *
+     * @return The mean, or 0 if nothing was recorded
+     */
+    public double getMean(){
+        long count = 0;
+        double total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            long bucketCount = counts.get(i);
+            count += bucketCount;
+            total += bucketCount * (lowestValueOf(i) + highestValueOf(i)) / 2.0;
+        }
+        return count == 0 ? 0 : total / count;
+    }
+
+    /**
+     * Gets a one line summary of the histogram.
+     *
+     * @return The count, mean and percentiles of the latencies in nanoseconds
+     */
+    @Override
+    public String toString(){
+        return String.format("count %d, mean %.0f, p50 %d, p90 %d, p99 %d, p99.9 %d, max %d", getCount(), getMean(),
+                getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99),
+                getValueAtPercentile(99.9), getMax());
+    }
+
+    private static int bucketOf(long nanos){
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(nanos, 0);
+        }
+        int highestBit = 63 - Long.numberOfLeadingZeros(nanos);
+        if (highestBit >= MAX_BITS) {
+            return BUCKETS - 1;
+        }
+        int shift = highestBit - (SUB_BUCKET_BITS - 1); // leaves the value between HALF and SUB_BUCKETS - 1
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (nanos >> shift) - HALF;
+    }
+
+    private static long lowestValueOf(int bucket){
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF + 1;
+        return (long) (HALF + (bucket - SUB_BUCKETS) % HALF) << shift;
+    }
+
+    private static long highestValueOf(int bucket){
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / HALF + 1;
+        return lowestValueOf(bucket) + (1L << shift) - 1;
+    }
+}
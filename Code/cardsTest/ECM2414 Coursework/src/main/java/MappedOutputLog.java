@@ -0,0 +1,241 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The output of a whole game in one memory mapped file, appended to by every player at once without locking: a writer
+ * reserves the space of its record by advancing a shared position, then copies its bytes into the mapping, so players
+ * never wait for one another, nor for a write to the file, which the operating system makes in the background. The
+ * file is mapped in segments of 64 MB as it grows, and is made of records, each a header followed by bytes of output:
+ * <pre>
+ *   offset  bytes  field
+ *        0      4  whose output, player N as N and deck N as -N, or 0 where the rest of the segment is unused
+ *        4      4  length of the output, in bytes
+ *        8         the output
+ * </pre>
+ * Every number is big-endian. A record never crosses the end of a segment, and the file starts with 4 zero bytes
+ * and the magic, the ASCII characters "COUT", in place of a first record. Each player's records are in the order their
+ * lines were written, so the output files of the game can be rebuilt from the log once the game is over.
+ *
+ * Usage: MappedOutputLog LOG DIR
+ *        writes the output files of the game logged to a directory
+ */
+public class MappedOutputLog implements OutputSink {
+    private static final int MAGIC = 0x434F5554; // "COUT"
+    private static final int HEADER_SIZE = 8;
+    private static final int SEGMENT_SIZE = 1 << 26;
+
+    private final String filePath;
+    private final int segmentSize;
+    private FileChannel channel; // null unless the log is open
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0]; // grown, under the log's lock
+    private final AtomicLong position = new AtomicLong();
+
+    /**
+     * Constructs a log written to a file, replaced once the log is opened.
+     *
+     * @param filePath The location of the log file
+     */
+    public MappedOutputLog(String filePath){
+        this(filePath, SEGMENT_SIZE);
+    }
+
+    /**
+     * Constructs a log mapped in segments of another size, so that tests can cross the end of a segment quickly.
+     * The log can only be read back with the same size of segment.
+     *
+     * @param filePath The location of the log file
+     * @param segmentSize The size of each mapped segment, in bytes, more than the size of a record header
+     */
+    MappedOutputLog(String filePath, int segmentSize){
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("A segment must hold more than a record header");
+        }
+        this.filePath = filePath;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Gets the file the log is written to.
+     *
+     * @return The location of the log file
+     */
+    public String getFilePath(){
+        return filePath;
+    }
+
+    @Override
+    public synchronized void open(int numberOfPlayers) throws IOException {
+        close();
+        channel = FileChannel.open(Path.of(filePath), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        segments = new MappedByteBuffer[0];
+        position.set(HEADER_SIZE);
+        ByteBuffer first = segment(0);
+        first.putInt(0, 0);
+        first.putInt(4, MAGIC);
+    }
+
+    @Override
+    public void writePlayer(int player, OutputBuffer lines) throws IOException {
+        append(player + 1, lines);
+    }
+
+    @Override
+    public void writeDeck(int deck, OutputBuffer contents) throws IOException {
+        append(-(deck + 1), contents);
+    }
+
+    private void append(int owner, OutputBuffer output) throws IOException {
+        int length = output.size();
+        if (length == 0) {
+            return;
+        }
+        if (length > segmentSize - HEADER_SIZE) {
+            throw new IOException("Cannot log " + length + " bytes of output at once");
+        }
+        long current;
+        long start;
+        do { // a record which does not fit in the rest of its segment starts the next one instead
+            current = position.get();
+            long segmentEnd = (current / segmentSize + 1) * segmentSize;
+            start = current + HEADER_SIZE + length <= segmentEnd ? current : segmentEnd;
+        } while (!position.compareAndSet(current, start + HEADER_SIZE + length));
+        ByteBuffer segment = segment((int) (start / segmentSize));
+        int offset = (int) (start % segmentSize);
+        segment.putInt(offset + 4, length);
+        output.drainTo(segment, offset + HEADER_SIZE);
+        segment.putInt(offset, owner);
+    }
+
+    private ByteBuffer segment(int index) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        if (index < mapped.length) {
+            return mapped[index];
+        }
+        return map(index);
+    }
+
+    private synchronized ByteBuffer map(int index) throws IOException {
+        MappedByteBuffer[] mapped = segments;
+        if (index >= mapped.length) {
+            if (channel == null) {
+                throw new IOException(filePath + " is closed");
+            }
+            MappedByteBuffer[] grown = new MappedByteBuffer[index + 1];
+            System.arraycopy(mapped, 0, grown, 0, mapped.length);
+            for (int i = mapped.length; i <= index; i++) {
+                grown[i] = channel.map(FileChannel.MapMode.READ_WRITE, (long) i * segmentSize, segmentSize);
+            }
+            segments = grown;
+            mapped = grown;
+        }
+        return mapped[index];
+    }
+
+    /**
+     * Writes the log to its file, and cuts the file to the length of the records, where the operating system allows
+     * a mapped file to be cut; otherwise the unused end of the last segment stays in the file, as zeros.
+     *
+     * @throws IOException if the log cannot be written
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            for (MappedByteBuffer segment : segments) {
+                segment.force();
+            }
+            segments = new MappedByteBuffer[0];
+            try {
+                channel.truncate(position.get());
+            } catch (IOException e) { // Caught on Windows, where the file is still mapped until the mapping is collected
+            }
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * Writes the output files of a game from its log, as the game would have written them.
+     *
+     * @param filePath The location of the log file
+     * @param directory The directory the output files are written to, which must exist
+     * @throws IOException if the log cannot be read, or is not an output log, or the files cannot be written
+     */
+    public static void writeFiles(String filePath, String directory) throws IOException {
+        writeFiles(filePath, directory, SEGMENT_SIZE);
+    }
+
+    /**
+     * Writes the output files of a game from a log mapped in segments of another size.
+     *
+     * @param filePath The location of the log file
+     * @param directory The directory the output files are written to, which must exist
+     * @param segmentSize The size of each segment the log was mapped in, in bytes
+     * @throws IOException if the log cannot be read, or is not an output log, or the files cannot be written
+     */
+    static void writeFiles(String filePath, String directory, int segmentSize) throws IOException {
+        Map<Integer, ByteArrayOutputStream> outputs = new TreeMap<>();
+        int numberOfPlayers = 0;
+        try (FileChannel in = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            long size = in.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (in.read(header, 0) != HEADER_SIZE || header.getInt(0) != 0 || header.getInt(4) != MAGIC) {
+                throw new IOException(filePath + " is not an output log");
+            }
+            long position = HEADER_SIZE;
+            while (position + HEADER_SIZE <= size) {
+                long segmentEnd = (position / segmentSize + 1) * segmentSize;
+                header.clear();
+                if (position + HEADER_SIZE > segmentEnd || in.read(header, position) != HEADER_SIZE
+                        || header.getInt(0) == 0) { // the rest of the segment is unused
+                    position = segmentEnd;
+                    continue;
+                }
+                int owner = header.getInt(0);
+                ByteBuffer output = ByteBuffer.allocate(header.getInt(4));
+                while (output.hasRemaining() && in.read(output, position + HEADER_SIZE + output.position()) > 0) {
+                    continue;
+                }
+                outputs.computeIfAbsent(owner, o -> new ByteArrayOutputStream()).write(output.array());
+                numberOfPlayers = Math.max(numberOfPlayers, Math.abs(owner));
+                position += HEADER_SIZE + output.capacity();
+            }
+        }
+        OutputSink files = new Files(directory);
+        files.open(numberOfPlayers);
+        try {
+            OutputBuffer buffer = new OutputBuffer(0);
+            for (Map.Entry<Integer, ByteArrayOutputStream> output : outputs.entrySet()) {
+                buffer.append(output.getValue().toByteArray());
+                int owner = output.getKey();
+                if (owner > 0) {
+                    files.writePlayer(owner - 1, buffer);
+                } else {
+                    files.writeDeck(-owner - 1, buffer);
+                }
+            }
+        } finally {
+            files.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.out.println("Usage: MappedOutputLog LOG DIR");
+            return;
+        }
+        writeFiles(args[0], args[1]);
+    }
+}
@@ -0,0 +1,213 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * A reusable buffer of the bytes of output lines, formatted in place without any intermediate strings. Numbers up to
+ * 1023, which covers the card values of any ordinary pack, are copied from encodings made once, and larger numbers
+ * are written digit by digit. Text is encoded in the default charset, as the output files always have been, so the
+ * bytes written are those a FileWriter would write. A buffer is only ever used by one thread at a time.
+ */
+public class OutputBuffer {
+    private static final int CACHED_NUMBERS = 1024;
+    private static final byte[][] NUMBERS = new byte[CACHED_NUMBERS][];
+    private static final byte SPACE = ' ';
+    private static final byte[] COMMA = {',', ' '};
+
+    static {
+        for (int i = 0; i < CACHED_NUMBERS; i++) {
+            NUMBERS[i] = ascii(Integer.toString(i));
+        }
+    }
+
+    private byte[] bytes;
+    private int size = 0;
+
+    /**
+     * Constructs an empty buffer.
+     *
+     * @param capacity The number of bytes the buffer holds before it has to grow
+     */
+    public OutputBuffer(int capacity){
+        this.bytes = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Encodes text which is known to be ASCII, such as the fixed words of the output lines, to be appended with append.
+     *
+     * @param text The text, every character of which is below 128
+     * @return The bytes of the text
+     * @throws IllegalArgumentException if the text is not ASCII
+     */
+    public static byte[] ascii(String text){
+        byte[] encoded = new byte[text.length()];
+        for (int i = 0; i < encoded.length; i++) {
+            char c = text.charAt(i);
+            if (c >= 128) {
+                throw new IllegalArgumentException("Not ASCII: " + text);
+            }
+            encoded[i] = (byte) c;
+        }
+        return encoded;
+    }
+
+    /**
+     * Appends bytes already encoded, such as those of ascii.
+     *
+     * @param encoded The bytes
+     * @return This buffer
+     */
+    public OutputBuffer append(byte[] encoded){
+        ensureCapacity(encoded.length);
+        System.arraycopy(encoded, 0, bytes, size, encoded.length);
+        size += encoded.length;
+        return this;
+    }
+
+    /**
+     * Appends text, such as a player's name. ASCII text is copied a character at a time, anything else is encoded in
+     * the default charset.
+     *
+     * @param text The text
+     * @return This buffer
+     */
+    public OutputBuffer append(String text){
+        int length = text.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c >= 128) {
+                return append(text.getBytes(Charset.defaultCharset()));
+            }
+            bytes[size + i] = (byte) c;
+        }
+        size += length;
+        return this;
+    }
+
+    /**
+     * Appends a number in decimal, as Integer.toString writes it.
+     *
+     * @param number The number
+     * @return This buffer
+     */
+    public OutputBuffer append(int number){
+        if (number >= 0 && number < CACHED_NUMBERS) {
+            return append(NUMBERS[number]);
+        }
+        ensureCapacity(11); // the digits of Integer.MIN_VALUE and its sign
+        long remaining = Math.abs((long) number);
+        int digits = 1;
+        for (long power = 10; power <= remaining; power *= 10) {
+            digits++;
+        }
+        if (number < 0) {
+            bytes[size++] = '-';
+        }
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        size += digits;
+        return this;
+    }
+
+    /**
+     * Appends the values of the cards held in a hand, separated by whitespace, in the format of
+     * Player.getHandAsString.
+     *
+     * @param hand The values of the cards in the hand, followed by any unused slots
+     * @param handSize The number of cards held, at the start of the array
+     * @return This buffer
+     */
+    public OutputBuffer appendHand(int[] hand, int handSize){
+        for (int i = 0; i < handSize; i++) {
+            if (i > 0) {
+                append(SPACE);
+            }
+            append(hand[i]);
+        }
+        return this;
+    }
+
+    /**
+     * Appends values as a list, in the format of List.toString: in square brackets, separated by a comma and a space.
+     *
+     * @param values The values
+     * @return This buffer
+     */
+    public OutputBuffer appendList(int[] values){
+        append((byte) '[');
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                append(COMMA);
+            }
+            append(values[i]);
+        }
+        return append((byte) ']');
+    }
+
+    private OutputBuffer append(byte b){
+        ensureCapacity(1);
+        bytes[size++] = b;
+        return this;
+    }
+
+    private void ensureCapacity(int more){
+        if (size + more > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, size + more)];
+            System.arraycopy(bytes, 0, grown, 0, size);
+            bytes = grown;
+        }
+    }
+
+    /**
+     * Gets the number of bytes in the buffer.
+     *
+     * @return The number of bytes
+     */
+    public int size(){
+        return size;
+    }
+
+    /**
+     * Writes the bytes in the buffer to a stream, then empties the buffer.
+     *
+     * @param out The stream written to
+     * @throws IOException if the stream cannot be written
+     */
+    public void drainTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+        size = 0;
+    }
+
+    /**
+     * Copies the bytes in the buffer into a byte buffer, at a given index, then empties the buffer. The position of
+     * the byte buffer is not changed, so different threads can copy into different parts of one byte buffer.
+     *
+     * @param out The byte buffer copied into
+     * @param index The index in the byte buffer of the first byte copied
+     */
+    public void drainTo(ByteBuffer out, int index){
+        out.put(index, bytes, 0, size);
+        size = 0;
+    }
+
+    /**
+     * Empties the buffer, keeping its capacity.
+     */
+    public void clear(){
+        size = 0;
+    }
+
+    /**
+     * Gets the text in the buffer, decoded from the default charset.
+     *
+     * @return The text
+     */
+    @Override
+    public String toString(){
+        return new String(bytes, 0, size, Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,250 @@
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Where the output of a game goes: the lines of every player and the contents of every deck, as the game log hands
+ * them over, already formatted. The game log buffers each player's lines and decides when to hand them over, so a
+ * sink only ever receives whole lines, a player's in the order they were written. Each player's lines are handed over
+ * by one thread at a time, but different players' lines may be handed over at the same time.
+ */
+public interface OutputSink {
+
+    /**
+     * Gets ready for the output of a game, discarding any output of a previous game.
+     *
+     * @param numberOfPlayers The number of players, and so of decks, in the game
+     * @throws IOException if the output cannot be written
+     */
+    void open(int numberOfPlayers) throws IOException;
+
+    /**
+     * Writes lines of a player's output, then empties the buffer.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @param lines The lines
+     * @throws IOException if the lines cannot be written
+     */
+    void writePlayer(int player, OutputBuffer lines) throws IOException;
+
+    /**
+     * Writes the contents of a deck, then empties the buffer.
+     *
+     * @param deck The index of the deck (zero-indexed)
+     * @param contents The contents of the deck, as a line
+     * @throws IOException if the contents cannot be written
+     */
+    void writeDeck(int deck, OutputBuffer contents) throws IOException;
+
+    /**
+     * Ends the output of a player who has exited the game, whose lines have all been written.
+     *
+     * @param player The index of the player (zero-indexed)
+     * @throws IOException if the output cannot be ended
+     */
+    default void closePlayer(int player) throws IOException {
+    }
+
+    /**
+     * Ends the output of the game, once every line has been written. Closing a sink which is already closed has no
+     * effect.
+     *
+     * @throws IOException if the output cannot be ended
+     */
+    void close() throws IOException;
+
+    /**
+     * Parses a sink from the command line.
+     *
+     * @param specification files or files:DIR for an output file per player and per deck, mmap:FILE for one memory
+     *                      mapped log of the whole game, memory to keep the output in memory, or null to discard it
+     * @param outputDirectory The directory of the output files when files is given without one
+     * @return The sink
+     * @throws IllegalArgumentException if the kind of sink is unknown, or lacks the file it needs
+     */
+    static OutputSink parse(String specification, String outputDirectory){
+        String[] parts = specification.split(":", 2);
+        return switch (parts[0].toLowerCase()) {
+            case "files" -> new Files(parts.length > 1 ? parts[1] : outputDirectory);
+            case "mmap" -> {
+                if (parts.length == 1) {
+                    throw new IllegalArgumentException("A memory mapped log needs a file, e.g. mmap:game.log");
+                }
+                yield new MappedOutputLog(parts[1]);
+            }
+            case "memory" -> new Memory();
+            case "null" -> new Null();
+            default -> throw new IllegalArgumentException("Unknown output: " + specification);
+        };
+    }
+
+    /**
+     * An output file for each player and each deck, in a directory, named as the coursework requires.
+     */
+    class Files implements OutputSink {
+        private final String directory;
+        private FileOutputStream[] playerFiles = new FileOutputStream[0];
+        private FileOutputStream[] deckFiles = new FileOutputStream[0];
+
+        /**
+         * Constructs a sink writing to the files of a directory, which must exist.
+         *
+         * @param directory The location of the directory, with or without a separator at the end
+         */
+        public Files(String directory){
+            this.directory = directory;
+        }
+
+        /**
+         * Gets the directory the files are written to.
+         *
+         * @return The location of the directory
+         */
+        public String getDirectory(){
+            return directory;
+        }
+
+        @Override
+        public void open(int numberOfPlayers) throws IOException {
+            close();
+            playerFiles = new FileOutputStream[numberOfPlayers];
+            deckFiles = new FileOutputStream[numberOfPlayers];
+            try {
+                for (int i = 0; i < numberOfPlayers; i++) {
+                    playerFiles[i] = new FileOutputStream(new File(directory, "player" + (i + 1) + "_output.txt"));
+                    deckFiles[i] = new FileOutputStream(new File(directory, "deck" + (i + 1) + "_output.txt"));
+                }
+            } catch (IOException e) { // Caught if the directory does not exist
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public void writePlayer(int player, OutputBuffer lines) throws IOException {
+            lines.drainTo(playerFiles[player]);
+        }
+
+        @Override
+        public void writeDeck(int deck, OutputBuffer contents) throws IOException {
+            contents.drainTo(deckFiles[deck]);
+        }
+
+        @Override
+        public void closePlayer(int player) throws IOException {
+            playerFiles[player].close();
+        }
+
+        /**
+         * Closes every file. Files which fail to close do not stop the others from being closed.
+         *
+         * @throws IOException if any of the files could not be closed
+         */
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (FileOutputStream[] files : new FileOutputStream[][] {playerFiles, deckFiles}) {
+                for (FileOutputStream file : files) {
+                    if (file == null) {
+                        continue;
+                    }
+                    try {
+                        file.close(); // closing an already closed file has no effect
+                    } catch (IOException e) {
+                        failure = e;
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Keeps the output in memory, for tests to read back once the game is over.
+     */
+    class Memory implements OutputSink {
+        private ByteArrayOutputStream[] players = new ByteArrayOutputStream[0];
+        private ByteArrayOutputStream[] decks = new ByteArrayOutputStream[0];
+
+        @Override
+        public void open(int numberOfPlayers){
+            players = new ByteArrayOutputStream[numberOfPlayers];
+            decks = new ByteArrayOutputStream[numberOfPlayers];
+            for (int i = 0; i < numberOfPlayers; i++) {
+                players[i] = new ByteArrayOutputStream();
+                decks[i] = new ByteArrayOutputStream();
+            }
+        }
+
+        @Override
+        public void writePlayer(int player, OutputBuffer lines) throws IOException {
+            lines.drainTo(players[player]);
+        }
+
+        @Override
+        public void writeDeck(int deck, OutputBuffer contents) throws IOException {
+            contents.drainTo(decks[deck]);
+        }
+
+        @Override
+        public void close(){
+        }
+
+        /**
+         * Gets what a player's output file would hold.
+         *
+         * @param player The index of the player (zero-indexed)
+         * @return The bytes of the player's output
+         */
+        public byte[] getPlayerOutput(int player){
+            return players[player].toByteArray();
+        }
+
+        /**
+         * Gets what a deck's output file would hold.
+         *
+         * @param deck The index of the deck (zero-indexed)
+         * @return The bytes of the deck's output
+         */
+        public byte[] getDeckOutput(int deck){
+            return decks[deck].toByteArray();
+        }
+
+        /**
+         * Gets the lines of a player's output.
+         *
+         * @param player The index of the player (zero-indexed)
+         * @return The text of the player's output, decoded from the default charset
+         */
+        public String getPlayerText(int player){
+            return players[player].toString(Charset.defaultCharset());
+        }
+    }
+
+    /**
+     * Discards the output, once it has been formatted, to measure the game without any writes.
+     */
+    class Null implements OutputSink {
+        @Override
+        public void open(int numberOfPlayers){
+        }
+
+        @Override
+        public void writePlayer(int player, OutputBuffer lines){
+            lines.clear();
+        }
+
+        @Override
+        public void writeDeck(int deck, OutputBuffer contents){
+            contents.clear();
+        }
+
+        @Override
+        public void close(){
+        }
+    }
+}
@@ -0,0 +1,190 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the values of pack files in memory, so that games set up from the same pack again and again read and parse
+ * it once. A pack is cached by its path and modification time, so a pack which has been changed is read again, and the
+ * packs used least recently are evicted once the cache holds more than its limit of cards. The values of a cached pack
+ * are checked against the rules of the game once, when they are read, then shared by every game dealt from the cache.
+ * Those games deal by reading them in place and never write to them, while anyone else asking for a pack is handed a
+ * copy of it.
+ */
+public class PackCache {
+    private final long maxCards;
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // least recent first
+    private long cachedCards = 0;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Constructs an empty cache.
+     *
+     * @param maxCards The most cards the cache holds across all its packs, although a single larger pack is still
+     *                 cached on its own
+     */
+    public PackCache(long maxCards){
+        if (maxCards < 0) {
+            throw new IllegalArgumentException("The cache cannot hold fewer than 0 cards");
+        }
+        this.maxCards = maxCards;
+    }
+
+    /**
+     * Gets the values of a pack file, text or binary, reading the file only if it is not cached or has been modified
+     * since it was cached. Games asking for a pack while it is being read wait for it rather than reading it again.
+     *
+     * @param filePath The location of the pack file
+     * @param expectedCards The number of cards the game needs, 8 per player
+     * @return A copy of the values of the cards, from the top of the pack
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException when the file contains an illegal card value
+     * @throws ArrayIndexOutOfBoundsException if the pack holds more or less than the expected number of cards
+     */
+    public int[] get(String filePath, int expectedCards)
+            throws IOException, NumberFormatException, ArrayIndexOutOfBoundsException {
+        return getShared(filePath, expectedCards).clone();
+    }
+
+    /**
+     * Gets the values of a pack file like {@link #get}, without copying them. The values are shared with every other
+     * game dealt from the pack, so they are only handed to games, which deal by reading them in place.
+     *
+     * @param filePath The location of the pack file
+     * @param expectedCards The number of cards the game needs, 8 per player
+     * @return The values of the cards, from the top of the pack, which must never be written to
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException when the file contains an illegal card value
+     * @throws ArrayIndexOutOfBoundsException if the pack holds more or less than the expected number of cards
+     */
+    int[] getShared(String filePath, int expectedCards)
+            throws IOException, NumberFormatException, ArrayIndexOutOfBoundsException {
+        Path path = Path.of(filePath).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(path);
+            if (entry == null || !entry.isOf(attributes)) {
+                if (entry != null && entry.values != null) {
+                    cachedCards -= entry.values.length; // the stale values are replaced
+                }
+                entry = new Entry(attributes);
+                entries.put(path, entry);
+            }
+        }
+
+        int[] values;
+        synchronized (entry) { // other games wait here while the pack is read, other packs are not held up
+            values = entry.values;
+            if (values != null) {
+                hits.increment();
+            } else {
+                misses.increment();
+                try {
+                    values = BinaryPack.isBinaryPack(filePath) ? BinaryPack.readAll(filePath)
+                            : PackReader.readAll(filePath);
+                    CardGame.checkCardValues(values); // checked once, before any game is dealt from the pack
+                } catch (IOException | RuntimeException e) { // the next game to ask reads the pack again
+                    synchronized (entries) {
+                        entries.remove(path, entry);
+                    }
+                    throw e;
+                }
+                entry.values = values;
+                addCards(path, entry, values.length);
+            }
+        }
+
+        if (values.length != expectedCards) {
+            throw new ArrayIndexOutOfBoundsException(filePath + " has " + values.length + " cards, the game needs "
+                    + expectedCards);
+        }
+        return values;
+    }
+
+    /**
+     * Counts the cards of a pack just read, then evicts the least recently used packs until the cache is within its
+     * limit again, never evicting the pack just read.
+     */
+    private void addCards(Path path, Entry entry, int cards){
+        synchronized (entries) {
+            if (entries.get(path) != entry) {
+                return; // replaced by a newer version of the file while it was being read
+            }
+            cachedCards += cards;
+            Iterator<Map.Entry<Path, Entry>> leastRecent = entries.entrySet().iterator();
+            while (cachedCards > maxCards && leastRecent.hasNext()) {
+                Map.Entry<Path, Entry> eldest = leastRecent.next();
+                int[] values = eldest.getValue().values;
+                if (eldest.getValue() != entry && values != null) { // packs still being read are not counted yet
+                    cachedCards -= values.length;
+                    leastRecent.remove();
+                    evictions.increment();
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of times a pack was found in the cache, unmodified.
+     *
+     * @return The number of hits
+     */
+    public long getHits(){
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of times a pack had to be read from its file.
+     *
+     * @return The number of misses
+     */
+    public long getMisses(){
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of packs evicted to keep the cache within its limit.
+     *
+     * @return The number of evictions
+     */
+    public long getEvictions(){
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the number of cards held in the cache, across all its packs.
+     *
+     * @return The number of cards
+     */
+    public long getCachedCards(){
+        synchronized (entries) {
+            return cachedCards;
+        }
+    }
+
+    /**
+     * A cached pack, along with the size and modification time of the file it was read from.
+     */
+    private static class Entry {
+        private final FileTime lastModified;
+        private final long size;
+        private volatile int[] values; // null until read
+
+        private Entry(BasicFileAttributes attributes){
+            this.lastModified = attributes.lastModifiedTime();
+            this.size = attributes.size();
+        }
+
+        private boolean isOf(BasicFileAttributes attributes){
+            return lastModified.equals(attributes.lastModifiedTime()) && size == attributes.size();
+        }
+    }
+}
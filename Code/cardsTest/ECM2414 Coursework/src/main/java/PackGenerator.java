@@ -0,0 +1,242 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.SplittableRandom;
+
+/**
+ * Generates valid packs, of 8 cards per player, for any number of players, so that games can be dealt from
+ * reproducible workloads without going through pack files. Each layout shapes the pack for a different kind of game,
+ * from a fair one to one nobody can win, and the same layout, number of players and seed always give the same pack.
+ *
+ * Usage: PackGenerator --players=N [--layout=LAYOUT[:PARAMETER]] [--seed=S] [--out=FILE]
+ *        writes a text pack, or a binary pack if FILE ends in .pack, or prints the pack if no FILE is given
+ */
+public class PackGenerator {
+    private final Layout layout;
+    private final double parameter;
+
+    /**
+     * Constructs a generator of packs of a layout, with the default parameter of the layout.
+     *
+     * @param layout The layout of the packs
+     */
+    public PackGenerator(Layout layout){
+        this(layout, layout.defaultParameter);
+    }
+
+    /**
+     * Constructs a generator of packs of a layout.
+     *
+     * @param layout The layout of the packs
+     * @param parameter The parameter of the layout, the exponent of a skewed pack or the turns of a win in k turns,
+     *                  ignored by other layouts
+     * @throws IllegalArgumentException if the parameter is out of range for the layout
+     */
+    public PackGenerator(Layout layout, double parameter){
+        if (layout == Layout.SKEWED && !(parameter >= 0)) {
+            throw new IllegalArgumentException("The exponent of a skewed pack cannot be negative");
+        }
+        if (layout == Layout.WIN_IN_K && (parameter != Math.rint(parameter) || parameter < 1 || parameter > 4)) {
+            throw new IllegalArgumentException("A pack can only guarantee a win in 1 to 4 turns, not " + parameter);
+        }
+        this.layout = layout;
+        this.parameter = parameter;
+    }
+
+    /**
+     * Parses a generator from the command line, as a layout optionally followed by its parameter.
+     *
+     * @param specification The layout and parameter, e.g. uniform, skewed:1.5 or win_in_k:3
+     * @return The generator
+     * @throws IllegalArgumentException if the layout is unknown or its parameter is out of range
+     */
+    public static PackGenerator parse(String specification){
+        String[] parts = specification.split(":", 2);
+        Layout layout = Layout.valueOf(parts[0].toUpperCase());
+        return parts.length == 1 ? new PackGenerator(layout) : new PackGenerator(layout, Double.parseDouble(parts[1]));
+    }
+
+    /**
+     * Generates a pack.
+     *
+     * @param numberOfPlayers The number of players the pack is for
+     * @param seed The seed of the random values
+     * @return The values of the 8 cards per player in the pack, from the top of the pack
+     * @throws IllegalArgumentException if there are no players
+     */
+    public int[] generate(int numberOfPlayers, long seed){
+        if (numberOfPlayers < 1) {
+            throw new IllegalArgumentException("A pack needs at least 1 player");
+        }
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] pack = new int[8 * numberOfPlayers];
+        switch (layout) {
+            case UNIFORM -> {
+                for (int i = 0; i < pack.length; i++) {
+                    pack[i] = 1 + random.nextInt(numberOfPlayers);
+                }
+            }
+            case SKEWED -> skewed(pack, numberOfPlayers, random);
+            case WIN_IN_K -> winInK(pack, numberOfPlayers, random);
+            case NEVER_WINNABLE -> fillWithoutFours(pack, 1, random);
+            case DECK_STARVING -> starving(pack, numberOfPlayers);
+        }
+        return pack;
+    }
+
+    /**
+     * Fills a pack with values weighted by a power law, value v being drawn in proportion to 1 / v^s, so that the
+     * first players are dealt many of the cards they prefer and the last ones few.
+     */
+    private void skewed(int[] pack, int numberOfPlayers, SplittableRandom random){
+        double[] cumulative = new double[numberOfPlayers];
+        double total = 0;
+        for (int value = 1; value <= numberOfPlayers; value++) {
+            total += Math.pow(value, -parameter);
+            cumulative[value - 1] = total;
+        }
+        for (int i = 0; i < pack.length; i++) {
+            double target = random.nextDouble() * total;
+            int low = 0;
+            int high = numberOfPlayers - 1;
+            while (low < high) { // the first value whose cumulative weight reaches the target
+                int middle = (low + high) >>> 1;
+                if (cumulative[middle] < target) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            pack[i] = low + 1;
+        }
+    }
+
+    /**
+     * Lays out a pack player 1 wins on exactly their k-th turn. Player 1 is dealt three 1s, and the fourth 1 is the
+     * k-th card of the deck they draw from, the only cards which can reach them before the discards of other players.
+     * Every other value appears at most three times, so nobody else can win first.
+     */
+    private void winInK(int[] pack, int numberOfPlayers, SplittableRandom random){
+        int[] others = new int[pack.length - 4];
+        fillWithoutFours(others, 2, random);
+        int n = numberOfPlayers;
+        int fourthOne = 4 * n + n * ((int) parameter - 1); // player 1's deck is dealt every n-th card after the hands
+        for (int i = 0, next = 0; i < pack.length; i++) {
+            boolean one = i == 0 || i == n || i == 2 * n || i == fourthOne; // three of player 1's hand, one of the deck
+            pack[i] = one ? 1 : others[next++];
+        }
+    }
+
+    /**
+     * Fills cards with shuffled values, each appearing at most three times, so that no hand can ever hold four cards
+     * of a value.
+     *
+     * @param cards The cards to fill
+     * @param lowestValue The lowest value to deal
+     */
+    private static void fillWithoutFours(int[] cards, int lowestValue, SplittableRandom random){
+        for (int i = 0; i < cards.length; i++) {
+            cards[i] = lowestValue + i / 3;
+        }
+        for (int i = cards.length - 1; i > 0; i--) { // Fisher-Yates shuffle
+            int j = random.nextInt(i + 1);
+            int value = cards[i];
+            cards[i] = cards[j];
+            cards[j] = value;
+        }
+    }
+
+    /**
+     * Lays out a pack in which every player is dealt, in their hand and their deck, only the cards preferred by the
+     * four players before them. The cards players want have to be passed almost all the way round the table to reach
+     * them, one discard at a time, so players go hungry for a long time and games run long. With four players or
+     * fewer, counting four seats back wraps round the table to the player themselves, so they are also dealt some
+     * cards of their own preferred value: one in four with three or four players, one in two with two.
+     */
+    private static void starving(int[] pack, int numberOfPlayers){
+        int n = numberOfPlayers;
+        for (int round = 0; round < 8; round++) {
+            for (int player = 0; player < n; player++) {
+                int owner = Math.floorMod(player - 1 - round % 4, n); // a player up to four seats before
+                pack[round * n + player] = owner + 1;
+            }
+        }
+    }
+
+    /**
+     * Gets the layout of the packs generated.
+     *
+     * @return The layout
+     */
+    public Layout getLayout(){
+        return layout;
+    }
+
+    /**
+     * Gets the parameter of the layout.
+     *
+     * @return The parameter
+     */
+    public double getParameter(){
+        return parameter;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int numberOfPlayers = 4;
+        PackGenerator generator = new PackGenerator(Layout.UNIFORM);
+        long seed = 0;
+        String out = null;
+        for (String arg : args) {
+            String value = arg.substring(arg.indexOf('=') + 1);
+            if (arg.startsWith("--players=")) {
+                numberOfPlayers = Integer.parseInt(value);
+            } else if (arg.startsWith("--layout=")) {
+                generator = parse(value);
+            } else if (arg.startsWith("--seed=")) {
+                seed = Long.parseLong(value);
+            } else if (arg.startsWith("--out=")) {
+                out = value;
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+
+        int[] pack = generator.generate(numberOfPlayers, seed);
+        if (out != null && out.endsWith(BinaryPack.EXTENSION)) {
+            BinaryPack.write(pack, numberOfPlayers, out);
+            return;
+        }
+        try (BufferedWriter writer = new BufferedWriter(out != null ? new FileWriter(out)
+                : new OutputStreamWriter(System.out))) {
+            for (int value : pack) {
+                writer.write(value + "\r\n"); // the line breaks of the packs in the repository
+            }
+        }
+    }
+
+    /**
+     * The ways the cards of a pack can be laid out.
+     */
+    public enum Layout {
+        /** Every card is a value from 1 to the number of players, uniformly at random. */
+        UNIFORM(0),
+        /** Values from 1 to the number of players weighted by 1 / v^s, s = 1 by default. */
+        SKEWED(1),
+        /** Player 1 wins on exactly their k-th turn and nobody can win before, k = 1 to 4, 4 by default. */
+        WIN_IN_K(4),
+        /** No value appears more than three times, so the game never ends until it is stopped. */
+        NEVER_WINNABLE(0),
+        /**
+         * Every player is dealt cards preferred by the four players before them, and with four players or fewer some
+         * of their own preferred value too, the seed is not used.
+         */
+        DECK_STARVING(0);
+
+        private final double defaultParameter;
+
+        Layout(double defaultParameter){
+            this.defaultParameter = defaultParameter;
+        }
+    }
+}
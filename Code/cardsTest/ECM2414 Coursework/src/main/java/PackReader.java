@@ -0,0 +1,143 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Reads pack files, of one card value per line, straight into an array of values. The file is read in blocks from a
+ * file channel and its ASCII digits parsed in place, with no string or object made per card. Lines follow the rules
+ * of BufferedReader.readLine and values those of Integer.parseInt, so a pack is accepted exactly when it would be
+ * when read line by line, and every error names the line it is on.
+ */
+public class PackReader {
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final String filePath;
+    private final int expectedCards;
+    private int[] values;
+    private int cardCount = 0;
+    private int lineNumber = 1;
+    private int firstExtraLine = 0; // the line of the first card past the expected number, 0 until there is one
+    // The state of the line being parsed, which may span blocks
+    private long magnitude = 0;
+    private int digits = 0;
+    private boolean negative = false;
+    private boolean invalid = false;
+    private boolean lineStarted = false;
+
+    private PackReader(String filePath, int expectedCards){
+        this.filePath = filePath;
+        this.expectedCards = expectedCards;
+        this.values = new int[Math.max(expectedCards, 0)];
+    }
+
+    /**
+     * Reads the values of the cards in a pack file, checking it follows the rules of the game.
+     *
+     * @param filePath The location of the pack file
+     * @param expectedCards The number of cards the pack must hold, 8 per player
+     * @return The values of the cards, from the top of the pack
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a line is not a whole number, or is a negative one
+     * @throws ArrayIndexOutOfBoundsException if the pack holds more or less than the expected number of cards
+     */
+    public static int[] read(String filePath, int expectedCards)
+            throws IOException, NumberFormatException, ArrayIndexOutOfBoundsException {
+        PackReader reader = new PackReader(filePath, expectedCards);
+        reader.parseFile();
+        if (reader.cardCount > expectedCards) {
+            throw new ArrayIndexOutOfBoundsException(filePath + " has " + reader.cardCount + " cards from line "
+                    + reader.firstExtraLine + " on, the game needs " + expectedCards);
+        }
+        if (reader.cardCount < expectedCards) {
+            throw new ArrayIndexOutOfBoundsException(filePath + " ends at line " + (reader.lineNumber - 1) + " with "
+                    + reader.cardCount + " cards, the game needs " + expectedCards);
+        }
+        return reader.values;
+    }
+
+    /**
+     * Reads the values of every card in a pack file, however many there are, as when converting a pack to another
+     * format.
+     *
+     * @param filePath The location of the pack file
+     * @return The values of the cards, from the top of the pack
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a line is not a whole number, or is a negative one
+     */
+    public static int[] readAll(String filePath) throws IOException, NumberFormatException {
+        PackReader reader = new PackReader(filePath, -1);
+        reader.parseFile();
+        return Arrays.copyOf(reader.values, reader.cardCount);
+    }
+
+    /**
+     * Parses every block of the file, then the last line if the file does not end with a line break.
+     */
+    private void parseFile() throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(filePath), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BLOCK_SIZE);
+            byte[] block = buffer.array();
+            boolean afterCarriageReturn = false;
+            int read;
+            while ((read = channel.read(buffer)) != -1) {
+                for (int i = 0; i < read; i++) {
+                    byte b = block[i];
+                    if (b == '\n' || b == '\r') {
+                        if (!(b == '\n' && afterCarriageReturn)) { // a \r\n pair ends a single line
+                            endLine();
+                        }
+                        afterCarriageReturn = b == '\r';
+                        continue;
+                    }
+                    afterCarriageReturn = false;
+                    if (b >= '0' && b <= '9') {
+                        magnitude = magnitude * 10 + (b - '0');
+                        digits++;
+                        invalid |= magnitude > Integer.MAX_VALUE + 1L; // also stops the magnitude overflowing
+                    } else if ((b == '-' || b == '+') && !lineStarted) {
+                        negative = b == '-';
+                    } else {
+                        invalid = true;
+                    }
+                    lineStarted = true;
+                }
+                buffer.clear();
+            }
+        }
+        if (lineStarted) {
+            endLine();
+        }
+    }
+
+    /**
+     * Checks and stores the value of the line just parsed, then starts the next line.
+     *
+     * @throws NumberFormatException if the line is not a whole number, or is a negative one
+     */
+    private void endLine() throws NumberFormatException {
+        if (invalid || digits == 0 || (!negative && magnitude > Integer.MAX_VALUE)) {
+            throw new NumberFormatException("Line " + lineNumber + " of " + filePath + " is not a whole number");
+        }
+        if (negative && magnitude != 0) {
+            throw new NumberFormatException("Line " + lineNumber + " of " + filePath + " is a negative card value");
+        }
+        if (expectedCards < 0 && cardCount == values.length) { // reading every card, however many
+            values = Arrays.copyOf(values, Math.max(64, cardCount * 2));
+        }
+        if (cardCount < values.length) {
+            values[cardCount] = (int) magnitude;
+        } else if (firstExtraLine == 0) {
+            firstExtraLine = lineNumber;
+        }
+        cardCount++;
+        lineNumber++;
+        magnitude = 0;
+        digits = 0;
+        negative = false;
+        invalid = false;
+        lineStarted = false;
+    }
+}
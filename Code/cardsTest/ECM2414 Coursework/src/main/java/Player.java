@@ -1,22 +1,32 @@
+import java.util.Arrays;
 import java.util.LinkedList;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 public class Player {
-    private static int nextAvailableID = 0;
     private final int playerID;
     private final int discardDeckID;
-    private volatile LinkedList<Integer> hand = new LinkedList<>();
+    private static final int MAX_HAND_SIZE = 5; // 4 cards, plus the one drawn during a turn
+    private final int[] hand = new int[MAX_HAND_SIZE];
+    private int handSize = 0;
+    // The distinct values in the hand, and how many cards of each value the hand holds
+    private final int[] countedValues = new int[MAX_HAND_SIZE];
+    private final int[] valueCounts = new int[MAX_HAND_SIZE];
+    private int distinctValues = 0;
+    private SplittableRandom random = new SplittableRandom(); // only used by the thread the player takes turns on
+    private DiscardStrategy discardStrategy = DiscardStrategy.BuiltIn.RANDOM;
     private final String playerName;
+    private int turnsTaken = 0; // only updated by the thread the player takes turns on
+    private int lastRemovedIndex = -1;
 
     /**
      * Constructs an instance of the player class.
      *
+     * @param ids The allocator of the IDs of the game the player is in
      * @param numberOfPlayers The number of players in the game
      * @param name The name given to a player
      */
-    public Player (int numberOfPlayers, String name){
-        this.playerID = nextAvailableID;
-        incrementPlayerID();
+    public Player (GameIds ids, int numberOfPlayers, String name){
+        this.playerID = ids.nextPlayerID();
         if (numberOfPlayers > this.playerID + 1){
             this.discardDeckID = playerID + 1;
         }
@@ -46,12 +56,25 @@ public class Player {
     }
 
     /**
-     * Gets the all the cards in a players hand.
+     * Gets the all the cards in a players hand, as a copy in the order they were added.
      *
      * @return A LinkedList containing all cards in the players hand
      */
     public LinkedList<Integer> getHand(){
-        return this.hand;
+        LinkedList<Integer> values = new LinkedList<>();
+        for (int i = 0; i < handSize; i++) {
+            values.add(hand[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Gets a copy of the values of the cards in a players hand, in the order they were added.
+     *
+     * @return An array of the card values in the player's hand
+     */
+    public int[] getHandValues(){
+        return Arrays.copyOf(hand, handSize);
     }
 
     /**
@@ -60,7 +83,18 @@ public class Player {
      * @return A string of the values of all cards in a players hand separated by whitespace
      */
     public String getHandAsString(){
-        return String.format("%s %s %s %s", hand.get(0), hand.get(1), hand.get(2), hand.get(3));
+        OutputBuffer line = new OutputBuffer(16);
+        appendHandTo(line);
+        return line.toString();
+    }
+
+    /**
+     * Appends the hand of a player to an output line, in the format of getHandAsString, without copying it.
+     *
+     * @param out The buffer of the output line
+     */
+    public void appendHandTo(OutputBuffer out){
+        out.appendHand(hand, handSize);
     }
 
     /**
@@ -72,55 +106,163 @@ public class Player {
         return this.playerName;
     }
 
+    /**
+     * Gets the number of turns the player has taken.
+     *
+     * @return The number of turns taken
+     */
+    public int getTurnsTaken(){
+        return this.turnsTaken;
+    }
+
+    /**
+     * Records that the player has finished another turn.
+     */
+    public void incrementTurnsTaken(){
+        turnsTaken++;
+    }
+
+    /**
+     * Seeds the random choices of the player, so that a game can be played again with the same discards.
+     *
+     * @param seed The seed of the player's random number generator
+     */
+    public void setRandomSeed(long seed){
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Sets how the player chooses the card to discard at the end of their turn.
+     *
+     * @param discardStrategy The strategy choosing the player's discards
+     */
+    public void setDiscardStrategy(DiscardStrategy discardStrategy){
+        this.discardStrategy = discardStrategy;
+    }
+
+    /**
+     * Gets how the player chooses the card to discard at the end of their turn.
+     *
+     * @return The strategy choosing the player's discards
+     */
+    public DiscardStrategy getDiscardStrategy(){
+        return this.discardStrategy;
+    }
+
     /**
      * Adds a card to this player's hand.
      *
      * @param cardValue The vale of the card to be added to the hand
+     * @throws IllegalStateException if the hand already holds 5 cards
      */
     public void addCard(int cardValue){
-        hand.add(cardValue);
+        if (handSize == MAX_HAND_SIZE) {
+            throw new IllegalStateException(playerName + " already holds " + MAX_HAND_SIZE + " cards");
+        }
+        hand[handSize++] = cardValue;
+        countValue(cardValue, 1);
     }
 
     /**
-     * Removes a card from the players hand.
+     * Adds cards dealt from a pack to this player's hand, in the order they are taken from the pack.
+     *
+     * @param pack The values of the cards in the pack
+     * @param first The position in the pack of the first card to add
+     * @param stride The distance in the pack between one card to add and the next
+     * @param count The number of cards to add
+     * @throws IllegalStateException if the cards would not fit in the hand
+     */
+    public void addCards(int[] pack, int first, int stride, int count){
+        if (handSize + count > MAX_HAND_SIZE) {
+            throw new IllegalStateException(playerName + " cannot hold " + count + " more cards");
+        }
+        for (int i = 0, position = first; i < count; i++, position += stride) {
+            hand[handSize++] = pack[position];
+            countValue(pack[position], 1);
+        }
+    }
+
+    /**
+     * Removes a card from the players hand, chosen by the player's discard strategy from the cards which are not
+     * of the player's preferred value.
      *
      * @return The value of the card that was removed.
+     * @throws IllegalStateException if every card in the hand is of the preferred value,
+     *                               or the strategy chooses a card of the preferred value
      */
     public int removeCard(){
-        int handSize = hand.size();
-        while(true){
-            Random randomNumber = new Random();
-            int randomInt = randomNumber.nextInt(handSize);
-            if(hand.get(randomInt) != (this.getPlayerID() + 1)){
-                int removedCard = hand.get(randomInt);
-                hand.remove(randomInt);
-                return removedCard;
-            }
+        int preferredValue = this.getPlayerID() + 1;
+        if (countOf(preferredValue) == handSize) {
+            throw new IllegalStateException(playerName + " holds only cards of their preferred value");
         }
+        // The player drawing from the discard deck has the same index as the deck
+        int index = discardStrategy.chooseDiscard(hand, handSize, preferredValue, discardDeckID + 1, random);
+        if (index < 0 || index >= handSize || hand[index] == preferredValue) {
+            throw new IllegalStateException(discardStrategy + " chose card " + index + " of " + playerName + "'s hand");
+        }
+        int removedCard = hand[index];
+        lastRemovedIndex = index;
+        // Shifts the later cards down, so the hand keeps the order the cards were added in
+        System.arraycopy(hand, index + 1, hand, index, handSize - index - 1);
+        handSize--;
+        countValue(removedCard, -1);
+        return removedCard;
     }
 
     /**
-     * Checks whether the player has a winning hand.
+     * Gets the position in the hand of the card last removed, before the later cards were shifted down.
+     *
+     * @return The position of the card (zero-indexed), or -1 if no card has been removed
+     */
+    public int getLastRemovedIndex(){
+        return lastRemovedIndex;
+    }
+
+    /**
+     * Checks whether the player has a winning hand, which is 4 cards all of one value.
      *
      * @return True if the player has won the game.
      */
-    public Boolean checkWin(){
-        if(hand.size() == 4){
-            return hand.get(0).equals(hand.get(1)) && hand.get(0).equals(hand.get(2)) && hand.get(0).equals(hand.get(3));
-        }
-        return false;
+    public boolean checkWin(){
+        return handSize == 4 && distinctValues == 1;
     }
 
     /**
-     * Increments the next available id, for the next player.
+     * Gets how many cards of a value the hand holds.
+     *
+     * @param cardValue The value of the cards to count
+     * @return The number of cards of the value in the hand
      */
-    private static void incrementPlayerID(){nextAvailableID++;}
+    private int countOf(int cardValue){
+        for (int i = 0; i < distinctValues; i++) {
+            if (countedValues[i] == cardValue) {
+                return valueCounts[i];
+            }
+        }
+        return 0;
+    }
 
     /**
-     * Resets the player IDs in the case of a new game being created.
+     * Updates how many cards of a value the hand holds, as a card is added or removed.
+     *
+     * @param cardValue The value of the card added or removed
+     * @param change 1 when the card is added, -1 when it is removed
      */
-    public static void resetPlayerID(){
-        nextAvailableID = 0;
+    private void countValue(int cardValue, int change){
+        for (int i = 0; i < distinctValues; i++) {
+            if (countedValues[i] == cardValue) {
+                valueCounts[i] += change;
+                if (valueCounts[i] == 0) { // moves the last counted value into the freed slot
+                    distinctValues--;
+                    countedValues[i] = countedValues[distinctValues];
+                    valueCounts[i] = valueCounts[distinctValues];
+                }
+                return;
+            }
+        }
+        countedValues[distinctValues] = cardValue;
+        valueCounts[distinctValues] = 1;
+        distinctValues++;
     }
 
 }
@@ -0,0 +1,225 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The order in which players take their turns in a game played on a single thread. A schedule is either generated,
+ * going round the table or picking players at random, or recorded from a game played on many threads so that the
+ * game can be played again exactly.
+ */
+public class TurnSchedule {
+    private static final String SEED_PREFIX = "seed ";
+
+    private final int numberOfPlayers;
+    private final int[] turns; // null for generated schedules
+    private final SplittableRandom random; // null unless players are picked at random
+    private final Long seed; // the seed of the players' random choices in a recorded game, if known
+    private int position = 0;
+
+    private TurnSchedule(int numberOfPlayers, int[] turns, SplittableRandom random, Long seed){
+        this.numberOfPlayers = numberOfPlayers;
+        this.turns = turns;
+        this.random = random;
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a schedule in which the players take turns in order, going round the table for ever.
+     *
+     * @param numberOfPlayers The number of players in the game
+     * @return The schedule
+     */
+    public static TurnSchedule roundRobin(int numberOfPlayers){
+        return new TurnSchedule(numberOfPlayers, null, null, null);
+    }
+
+    /**
+     * Creates a schedule in which every turn is given to a player picked at random, for ever.
+     *
+     * @param numberOfPlayers The number of players in the game
+     * @param seed The seed of the random picks
+     * @return The schedule
+     */
+    public static TurnSchedule random(int numberOfPlayers, long seed){
+        return new TurnSchedule(numberOfPlayers, null, new SplittableRandom(seed), null);
+    }
+
+    /**
+     * Creates a schedule of the turns taken in a recorded game.
+     *
+     * @param turns The index of the player who took each turn, in order (zero-indexed)
+     * @param seed The seed of the players' random choices in the recorded game, or null if unknown
+     * @return The schedule
+     */
+    public static TurnSchedule recorded(int[] turns, Long seed){
+        return new TurnSchedule(0, turns.clone(), null, seed);
+    }
+
+    /**
+     * Reads a recorded schedule from a file written by writeToFile.
+     *
+     * @param filePath The location of the schedule file
+     * @return The schedule
+     * @throws IOException if the file cannot be read
+     * @throws NumberFormatException if a line of the file is not a player number
+     */
+    public static TurnSchedule readFromFile(String filePath) throws IOException {
+        Long seed = null;
+        int[] turns = new int[1024];
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(SEED_PREFIX)) {
+                    seed = Long.parseLong(line.substring(SEED_PREFIX.length()).trim());
+                } else if (!line.isBlank()) {
+                    if (count == turns.length) {
+                        turns = Arrays.copyOf(turns, count * 2);
+                    }
+                    turns[count++] = Integer.parseInt(line.trim()) - 1; // player numbers start from 1
+                }
+            }
+        }
+        return new TurnSchedule(0, Arrays.copyOf(turns, count), null, seed);
+    }
+
+    /**
+     * Writes a recorded schedule to a file, with the seed of the recorded game if known, then one player number per
+     * line for each turn.
+     *
+     * @param filePath The location of the schedule file, replaced if it exists
+     * @throws IllegalStateException if the schedule was generated rather than recorded
+     */
+    public void writeToFile(String filePath){
+        if (turns == null) {
+            throw new IllegalStateException("Only recorded schedules can be written");
+        }
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filePath))) {
+            if (seed != null) {
+                writer.write(SEED_PREFIX + seed + "\n");
+            }
+            for (int player : turns) {
+                writer.write((player + 1) + "\n");
+            }
+        } catch (IOException e) { // Caught if the file path is not correct
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Checks whether the schedule was recorded from a game, in which case every turn in it must be possible.
+     *
+     * @return True for a recorded schedule, false for a generated one
+     */
+    public boolean isRecorded(){
+        return turns != null;
+    }
+
+    /**
+     * Gets the seed of the players' random choices in the recorded game.
+     *
+     * @return The seed, or null if the schedule was generated or the seed is unknown
+     */
+    public Long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Gets the turns of a recorded schedule.
+     *
+     * @return A copy of the index of the player taking each turn, in order (zero-indexed)
+     */
+    public int[] getTurns(){
+        return turns == null ? null : turns.clone();
+    }
+
+    /**
+     * Checks whether the schedule has another turn, which generated schedules always have.
+     *
+     * @return True if there is another turn
+     */
+    public boolean hasNext(){
+        return turns == null || position < turns.length;
+    }
+
+    /**
+     * Gets the player who takes the next turn.
+     *
+     * @return The index of the player (zero-indexed)
+     */
+    public int next(){
+        if (turns != null) {
+            return turns[position++];
+        }
+        if (random != null) {
+            return random.nextInt(numberOfPlayers);
+        }
+        return (position++ & Integer.MAX_VALUE) % numberOfPlayers;
+    }
+
+    /**
+     * Gets the position of the next turn in the schedule.
+     *
+     * @return The number of turns given out so far
+     */
+    public int getPosition(){
+        return position;
+    }
+
+    /**
+     * Records the order of the turns taken in a game played on many threads. Every turn is given a sequence number
+     * while its player holds the locks of the turn, so two turns which touch the same deck or hand are numbered in
+     * the order they happened, and playing the turns in sequence order repeats the game.
+     */
+    public static class Recorder {
+        private final AtomicLong nextSequence = new AtomicLong();
+        private final long[][] sequences; // the sequence numbers of each player's turns, appended by its own thread
+        private final int[] counts;
+        private final Long seed;
+
+        /**
+         * Constructs a recorder for a game.
+         *
+         * @param numberOfPlayers The number of players in the game
+         * @param seed The seed of the players' random choices, or null if they were not seeded
+         */
+        public Recorder(int numberOfPlayers, Long seed){
+            this.sequences = new long[numberOfPlayers][16];
+            this.counts = new int[numberOfPlayers];
+            this.seed = seed;
+        }
+
+        /**
+         * Records a turn, must be called while the player holds the locks of the turn.
+         *
+         * @param playerIndex The index of the player taking the turn (zero-indexed)
+         */
+        public void record(int playerIndex){
+            long sequence = nextSequence.getAndIncrement();
+            if (counts[playerIndex] == sequences[playerIndex].length) {
+                sequences[playerIndex] = Arrays.copyOf(sequences[playerIndex], counts[playerIndex] * 2);
+            }
+            sequences[playerIndex][counts[playerIndex]++] = sequence;
+        }
+
+        /**
+         * Gets the schedule of the turns recorded, once every player has stopped taking turns.
+         *
+         * @return The recorded schedule
+         */
+        public TurnSchedule toSchedule(){
+            int[] turns = new int[(int) nextSequence.get()];
+            for (int player = 0; player < counts.length; player++) {
+                for (int i = 0; i < counts[player]; i++) {
+                    turns[(int) sequences[player][i]] = player;
+                }
+            }
+            return new TurnSchedule(0, turns, null, seed);
+        }
+    }
+}
@@ -1,23 +1,29 @@
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
+import java.util.zip.CRC32C;
+import jdk.jfr.consumer.RecordingFile;
 
 
 import static org.junit.jupiter.api.Assertions.*;
 
 class CardGameTest {
 
-    String INPUT_PATH = "C:\\Users\\Ghali\\IdeaProjects\\";
+    private static final String TEST_PACKS_PATH = "doc" + File.separator + "packs" + File.separator + "test_packs"
+            + File.separator;
     //TEST_OUTPUT_DIRECTORY_PATH
-    private static final String TEST_OUTPUT_DIRECTORY_PATH = "output\\test\\";
+    private static final String TEST_OUTPUT_DIRECTORY_PATH = "output" + File.separator + "test" + File.separator;
 
 
     static{
         //setupFilePath
         File outputDirectory = new File(TEST_OUTPUT_DIRECTORY_PATH);
         if(!outputDirectory.exists()) {
-            outputDirectory.mkdir();
+            outputDirectory.mkdirs();
             System.out.println("Created: " + TEST_OUTPUT_DIRECTORY_PATH);
         }
 
@@ -56,7 +62,7 @@ class CardGameTest {
      */
     @Test
     void testLoadPackFromFileValidPath() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four.txt";
+        String filePath = TEST_PACKS_PATH + "four.txt";
         var game = new CardGame();
         game.setNumberOfPlayersFromString("4");
         assertDoesNotThrow(
@@ -72,7 +78,7 @@ class CardGameTest {
      */
     @Test
     void testLoadPackFromFileInvalidPath() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\fourXyz.txt";
+        String filePath = TEST_PACKS_PATH + "fourXyz.txt";
         var game = new CardGame();
         game.setNumberOfPlayersFromString("4");
         assertThrows(IOException.class,
@@ -87,7 +93,7 @@ class CardGameTest {
      */
     @Test
     void testLoadPackFromFileWithAlphabetic() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four-invalid-1.txt";
+        String filePath = TEST_PACKS_PATH + "four-invalid-1.txt";
         var game = new CardGame();
         game.setNumberOfPlayersFromString("4");
         assertThrows(NumberFormatException.class,
@@ -102,7 +108,7 @@ class CardGameTest {
      */
     @Test
     void LoadPackFromFileWithMoreCardsTest() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four-invalid-2.txt";
+        String filePath = TEST_PACKS_PATH + "four-invalid-2.txt";
         var game = new CardGame();
         game.setNumberOfPlayersFromString("4");
         assertThrows(ArrayIndexOutOfBoundsException.class,
@@ -117,7 +123,7 @@ class CardGameTest {
      */
     @Test
     void LoadPackFromFileWithNegativeTest() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four-invalid-3.txt";
+        String filePath = TEST_PACKS_PATH + "four-invalid-3.txt";
         var game = new CardGame();
         game.setNumberOfPlayersFromString("4");
         assertThrows(NumberFormatException.class,
@@ -133,7 +139,7 @@ class CardGameTest {
      */
     @Test
     void dealCardsForPlayersTest() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         int playersCount = 8;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -143,8 +149,7 @@ class CardGameTest {
                 });
 
         ArrayList<Player> players = game.getPlayers();
-        LinkedList<Card> cards = game.getCards();
-        int totalCardsCount = cards.size();
+        int totalCardsCount = game.getCards().length;
 
         game.dealCardsForPlayers();
 
@@ -160,10 +165,10 @@ class CardGameTest {
         assertEquals(40, players.get(index++).getHand().peek());
 
         //check for the value of the top card in cards
-        assertEquals(1, cards.peek().getValue());
+        assertEquals(1, game.getCards()[0]);
 
         //check for remaining cards count
-        assertEquals(totalCardsCount - playersCount * 4, cards.size());
+        assertEquals(totalCardsCount - playersCount * 4, game.getCards().length);
     }
 
 
@@ -172,7 +177,7 @@ class CardGameTest {
      */
     @Test
     void DealCardsForDecksTest() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         int playersCount = 8;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -181,14 +186,13 @@ class CardGameTest {
                     game.loadPackFromFile(filePath);
                 });
 
-        LinkedList<Card> cards = game.getCards();
         ArrayList<CardDeck> decks = game.getDecks();
-        int totalCardsCount = cards.size();
+        int totalCardsCount = game.getCards().length;
 
         game.dealCardsForPlayers();
 
         //check for remaining cards count
-        assertEquals(totalCardsCount - playersCount * 4, cards.size());
+        assertEquals(totalCardsCount - playersCount * 4, game.getCards().length);
 
         game.dealCardsForDecks();
 
@@ -204,7 +208,7 @@ class CardGameTest {
         assertEquals(40, decks.get(index++).getCards().peek());
 
         //check for remaining cards count
-        assertEquals(0, cards.size());
+        assertEquals(0, game.getCards().length);
     }
 
 
@@ -213,7 +217,7 @@ class CardGameTest {
      */
     @Test
     void testWriteInitialHandOfPlayersToFile() {
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         int playersCount = 8;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -251,7 +255,7 @@ class CardGameTest {
      */
     @Test
     void writeInitialHandOfPlayersInFileExceptionTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         int playersCount = 8;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -275,7 +279,7 @@ class CardGameTest {
      */
     @Test
     void checkWinnersTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four.txt";
+        String filePath = TEST_PACKS_PATH + "four.txt";
         var game = new CardGame();
         int playersCount = 4;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -300,7 +304,7 @@ class CardGameTest {
      */
     @Test
     void outputPlayerMsgWriteToFileExceptionTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four.txt";
+        String filePath = TEST_PACKS_PATH + "four.txt";
         var game = new CardGame();
         int playersCount = 4;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -316,7 +320,7 @@ class CardGameTest {
 
         assertThrows(RuntimeException.class,
                 () -> {
-                    game.outputPlayerMsg("Hello World", 0, "ECM2414 Coursework\\d\\output\\");
+                    game.outputPlayerMsg("Hello World", 0, "missing" + File.separator + "output" + File.separator);
                 });
     }
 
@@ -325,7 +329,7 @@ class CardGameTest {
      */
     @Test
     void outputDeckExceptionTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         int playersCount = 8;
         game.setNumberOfPlayersFromString("" + playersCount);
@@ -352,7 +356,7 @@ class CardGameTest {
     @Test
     void setupTest(){
 
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\four.txt";
+        String filePath = TEST_PACKS_PATH + "four.txt";
         var game = new CardGame();
         game.setup("4", filePath, true);
 
@@ -367,7 +371,7 @@ class CardGameTest {
      */
     @Test
     void drawCardTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         String playersCount = "8";
         game.setup(playersCount, filePath, true);
@@ -382,7 +386,7 @@ class CardGameTest {
      */
     @Test
     void discardCardTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\eight.txt";
+        String filePath = TEST_PACKS_PATH + "eight.txt";
         var game = new CardGame();
         String playersCount = "8";
         game.setup(playersCount, filePath, true);
@@ -397,7 +401,7 @@ class CardGameTest {
      */
     @Test
     void gameplayTest(){
-        String filePath = INPUT_PATH + "ECM2414 Coursework\\doc\\packs\\test_packs\\five.txt";
+        String filePath = TEST_PACKS_PATH + "five.txt";
         var game = new CardGame();
 
         String playersCount = "5";
@@ -407,4 +411,1383 @@ class CardGameTest {
         game.gameplay(0);
         assertEquals(game.winner, 0);
     }
+
+    /**
+     * Tests that a turn taken under the deck locks alone runs correctly and detects the win.
+     */
+    @Test
+    void stripedGameplayTest(){
+        String filePath = TEST_PACKS_PATH + "five.txt";
+        var game = new CardGame();
+
+        String playersCount = "5";
+        game.setup(playersCount, filePath, true);
+        game.dealCards();
+
+        assertTrue(game.stripedGameplay(0));
+        assertEquals(game.winner, 0);
+        assertFalse(game.stripedGameplay(1));
+    }
+
+    /**
+     * Tests that a player who cannot take a striped turn waits on its empty deck until the neighbour discarding to it
+     * has taken a turn, and that the wait is counted once.
+     */
+    @Test
+    void stripedWaitTest() throws InterruptedException {
+        var game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setNumberOfPlayersFromString("2");
+        int[] pack = new int[16];
+        for (int i = 0; i < pack.length; i++) {
+            pack[i] = i + 1; // no value appears twice, so nobody can win
+        }
+        game.loadPack(pack);
+        game.setMetrics(new GameMetrics(2, 1));
+        game.dealCards();
+        CardDeck drawDeck = game.getDecks().get(1);
+        while (!drawDeck.isEmpty()) {
+            drawDeck.drawCard();
+        }
+
+        boolean[] taken = {true};
+        Thread waiting = new Thread(() -> taken[0] = game.stripedGameplay(1));
+        waiting.start();
+        while (waiting.getState() != Thread.State.WAITING) { // parked on the condition of the empty deck
+            assertTrue(waiting.isAlive());
+            Thread.sleep(1);
+        }
+        assertTrue(game.stripedGameplay(0)); // discards to the empty deck, waking the waiting player
+        waiting.join(5000);
+        assertFalse(waiting.isAlive());
+        assertFalse(taken[0]);
+        assertEquals(1, game.getMetrics().snapshot().getEmptyDeckWaits()[1]);
+        assertTrue(game.stripedGameplay(1));
+        assertEquals(0, game.getMetrics().snapshot().getFullDeckWaits()[1]);
+    }
+
+    /**
+     * Tests that a deck holds its capacity rounded up to a power of two, that its cards are drawn in the order they were
+     * added however many times the ring wraps round, and that the decks of a game are sized between 8 and 256 cards.
+     */
+    @Test
+    void cardDeckRingTest() {
+        assertEquals(8, CardDeck.capacityFor(1));
+        assertEquals(8, CardDeck.capacityFor(2));
+        assertEquals(12, CardDeck.capacityFor(3));
+        assertEquals(256, CardDeck.capacityFor(64));
+        assertEquals(256, CardDeck.capacityFor(65));
+        assertEquals(256, CardDeck.capacityFor(100_000));
+
+        var ids = new GameIds();
+        for (int[] capacities : new int[][] {{1, 1}, {4, 4}, {5, 8}, {8, 8}, {9, 16}, {12, 16}, {0, 1}}) {
+            var deck = new CardDeck(ids, "Deck", capacities[0]);
+            for (int i = 0; i < capacities[1]; i++) {
+                assertFalse(deck.isFull());
+                deck.addCard(i);
+            }
+            assertTrue(deck.isFull(), "capacity " + capacities[0]);
+            assertEquals(capacities[1], deck.size());
+            assertThrows(IllegalStateException.class, () -> deck.addCard(-1));
+        }
+
+        var deck = new CardDeck(ids, "Deck", 4);
+        assertThrows(NoSuchElementException.class, deck::drawCard);
+        int added = 0;
+        int drawn = 0;
+        for (int round = 0; round < 100; round++) { // wraps round the ring many times, at every fill level
+            int toAdd = 1 + round % 4;
+            for (int i = 0; i < toAdd && !deck.isFull(); i++) {
+                deck.addCard(added++);
+            }
+            List<Integer> expected = new ArrayList<>();
+            for (int value = drawn; value < added; value++) {
+                expected.add(value);
+            }
+            assertEquals(expected, deck.getCards());
+            var line = new OutputBuffer(16);
+            deck.appendCardsTo(line);
+            assertEquals(expected.toString(), line.toString());
+            assertEquals(added - drawn == 4, deck.isFull());
+            for (int i = 0; i < 1 + round % 3 && !deck.isEmpty(); i++) {
+                assertEquals(drawn++, deck.drawCard());
+            }
+        }
+        assertTrue(added > 100);
+
+        int room = 4 - deck.size();
+        assertThrows(IllegalStateException.class, () -> deck.addCards(new int[5], 0, 1, room + 1));
+    }
+
+    /**
+     * Tests that a player of a game of more than 64 players waits on a full discard deck, which only happens once the
+     * decks hold more cards than one deck has room for: under both turn lockings, and on a pool of players playing the
+     * game, where the player is parked on the deck until the neighbour drawing from it has taken a turn.
+     */
+    @Test
+    void fullDeckWaitTest() throws InterruptedException {
+        for (CardGame.TurnLocking locking : CardGame.TurnLocking.values()) {
+            var game = fullDecksGame(locking);
+            boolean[] taken = {true};
+            Thread waiting = new Thread(() -> taken[0] = takeTurn(game, 0));
+            waiting.start();
+            while (waiting.getState() != Thread.State.WAITING) { // waiting for room in the full deck
+                assertTrue(waiting.isAlive());
+                Thread.sleep(1);
+            }
+            assertEquals(1, game.getMetrics().snapshot().getFullDeckWaits()[0], locking.name());
+            assertTrue(takeTurn(game, 2)); // draws from deck 2, making room for player 1
+            assertTrue(takeTurn(game, 1)); // draws from deck 1, waking the waiting player 0
+            waiting.join(5000);
+            assertFalse(waiting.isAlive());
+            assertFalse(taken[0]);
+            assertTrue(takeTurn(game, 0), locking.name());
+            assertEquals(1, game.getMetrics().snapshot().getFullDeckWaits()[0], locking.name());
+            assertEquals(0, game.getMetrics().snapshot().getEmptyDeckWaits()[0], locking.name());
+            game.resetIDs();
+
+            // On a pool of one thread, players run in turn: players 0 and 1 are stopped by their full discard decks
+            // and queue up again, player 2 makes room for player 1, and player 0 is then still stopped, so is parked
+            var pooled = fullDecksGame(locking);
+            pooled.setPlayerThreads(CardGame.PlayerThreads.POOLED, 1);
+            int[] winner = {0};
+            Thread playing = new Thread(() -> {
+                try {
+                    winner[0] = pooled.play();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            playing.start();
+            while (pooled.getMetrics().snapshot().getFullDeckWaits()[0] == 0) {
+                assertTrue(playing.isAlive());
+                Thread.sleep(1);
+            }
+            pooled.endWithoutWinner();
+            playing.join(10_000);
+            assertFalse(playing.isAlive());
+            assertEquals(-1, winner[0]);
+            pooled.resetIDs();
+        }
+    }
+
+    /**
+     * Sets up a game of 130 players nobody can win, with the decks of index 1 and 2 full after turns taken by the other
+     * players: player 0 cannot discard to deck 1 until player 1 has drawn from it, nor player 1 to deck 2 until player
+     * 2 has (all zero-indexed).
+     */
+    private static CardGame fullDecksGame(CardGame.TurnLocking locking) {
+        int players = 130; // 520 cards in the decks, room for all of them in 3 decks of 256 but not in 2
+        var game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setTurnLocking(locking);
+        game.setNumberOfPlayersFromString("" + players);
+        game.setMetrics(new GameMetrics(players, 1));
+        int[] pack = new int[8 * players];
+        for (int i = 0; i < pack.length; i++) {
+            pack[i] = players + 1 + i; // no player prefers any card, and no value appears twice
+        }
+        game.loadPack(pack);
+        game.dealCards();
+        pileUp(game, 2, Set.of(2));
+        pileUp(game, 1, Set.of(1, 2));
+        assertEquals(0, Arrays.stream(game.getMetrics().snapshot().getFullDeckWaits()).sum());
+        return game;
+    }
+
+    /**
+     * Passes cards round the table, with every player not left idle taking each turn they can, until a deck is full.
+     */
+    private static void pileUp(CardGame game, int deckIndex, Set<Integer> idle) {
+        List<CardDeck> decks = game.getDecks();
+        while (!decks.get(deckIndex).isFull()) {
+            boolean moved = false;
+            for (int player = 0; player < decks.size(); player++) {
+                if (!idle.contains(player) && !decks.get(player).isEmpty()
+                        && !decks.get((player + 1) % decks.size()).isFull()) {
+                    assertTrue(takeTurn(game, player));
+                    moved = true;
+                }
+            }
+            assertTrue(moved, "Deck " + (deckIndex + 1) + " cannot be filled");
+        }
+    }
+
+    /**
+     * Takes a turn for a player under the game's turn locking, waiting if the player cannot take one.
+     */
+    private static boolean takeTurn(CardGame game, int playerIndex) {
+        return game.getTurnLocking() == CardGame.TurnLocking.STRIPED
+                ? game.stripedGameplay(playerIndex)
+                : game.gameplay(playerIndex);
+    }
+
+    /**
+     * Tests that a game without output files can be played to the end on the player threads.
+     */
+    @Test
+    void playWithoutOutputTest() throws InterruptedException {
+        var game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setNumberOfPlayersFromString("4");
+        game.loadPack(BatchSimulator.generatePack(4, 1));
+        game.setMetrics(new GameMetrics(4, 1));
+        game.dealCards();
+
+        int winner = game.play();
+        assertTrue(winner >= 0 && winner < 4);
+        assertTrue(game.getPlayers().get(winner).checkWin());
+        long[] turns = game.getMetrics().snapshot().getTurns(); // counted by the game, not by the players
+        long totalTurns = 0;
+        for (int i = 0; i < 4; i++) {
+            assertEquals(turns[i], game.getPlayers().get(i).getTurnsTaken());
+            totalTurns += turns[i];
+        }
+        assertTrue(totalTurns > 0); // the pack of seed 1 has no winning hand on the deal
+        assertEquals(totalTurns, game.getTurnsTaken());
+    }
+
+    /**
+     * Tests that games built at the same time from many threads each get their own player and deck IDs.
+     */
+    @Test
+    void concurrentSetupStressTest() throws InterruptedException {
+        int threadsCount = 16;
+        int gamesPerThread = 200;
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadsCount; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int g = 0; g < gamesPerThread; g++) {
+                        int playersCount = 2 + g % 7;
+                        var game = new CardGame();
+                        game.setNumberOfPlayersFromString("" + playersCount);
+                        game.loadPack(BatchSimulator.generatePack(playersCount, g));
+                        for (int i = 0; i < playersCount; i++) {
+                            assertEquals(i, game.getPlayers().get(i).getPlayerID());
+                            assertEquals((i + 1) % playersCount, game.getPlayers().get(i).getDiscardDeckID());
+                            assertEquals(i, game.getDecks().get(i).getDeckID());
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(List.of(), failures);
+    }
+
+    /**
+     * Tests that events published to the background writer are all written, in order, once the game is won.
+     */
+    @Test
+    void asyncEventLogTest(){
+        String filePath = TEST_PACKS_PATH + "five.txt";
+        var game = new CardGame();
+        game.setAsyncEventLog(2, GameEventWriter.Backpressure.BLOCK);
+
+        String playersCount = "5";
+        game.setup(playersCount, filePath, true);
+        game.dealCards();
+        game.gameplay(0);
+
+        try (BufferedReader reader = new BufferedReader(new FileReader("output" + File.separator + "player1_output.txt"))) {
+            List<String> lines = reader.lines().toList();
+            assertEquals(7, lines.size());
+            assertTrue(lines.get(1).startsWith("Player 1 draws a "));
+            assertTrue(lines.get(2).startsWith("Player 1 discards a "));
+            assertTrue(lines.get(3).startsWith("Player 1's current hand is "));
+            assertEquals("Player 1 wins", lines.get(4));
+            assertEquals("Player 1 exits", lines.get(5));
+            assertTrue(lines.get(6).startsWith("Player 1 final hand: "));
+        } catch (IOException e) {
+            fail(e.getMessage());
+        }
+    }
+
+    /**
+     * Tests that a player's lines reach their output file after every turn under FlushPolicy.PER_TURN, after every N
+     * lines under FlushPolicy.EVERY_N_EVENTS, and only once the game is over under FlushPolicy.ON_EXIT, besides the
+     * initial hand, which is always written straight away.
+     */
+    @Test
+    void flushPolicyTest() throws IOException {
+        Path directory = Files.createTempDirectory("flush");
+        Path file = directory.resolve("player1_output.txt");
+        GameLog.FlushPolicy[] policies = {GameLog.FlushPolicy.PER_TURN, GameLog.FlushPolicy.EVERY_N_EVENTS,
+                GameLog.FlushPolicy.EVERY_N_EVENTS, GameLog.FlushPolicy.ON_EXIT};
+        int[] eventsPerFlush = {0, 2, 4, 0};
+        // The lines in the file after the deal, then after each of two turns, each turn writing 3 lines
+        int[][] linesWritten = {{1, 4, 7}, {1, 3, 7}, {1, 1, 5}, {1, 1, 1}};
+        for (int i = 0; i < policies.length; i++) {
+            String name = policies[i] + ":" + eventsPerFlush[i];
+            var game = new CardGame();
+            game.setOutputDirectory(directory + File.separator);
+            game.setQuiet(true);
+            game.setTurnLocking(CardGame.TurnLocking.MONITOR);
+            game.setAsyncEventLog(0, GameEventWriter.Backpressure.BLOCK); // lines written by the player taking the turn
+            game.setFlushPolicy(policies[i], eventsPerFlush[i]);
+            game.setNumberOfPlayersFromString("2");
+            int[] pack = new int[16];
+            for (int card = 0; card < pack.length; card++) {
+                pack[card] = 10 + card; // no player prefers any card, and no value appears twice
+            }
+            game.loadPack(pack);
+            game.dealCards();
+            assertEquals(linesWritten[i][0], Files.readString(file).split("\n").length, name);
+            for (int turn = 1; turn <= 2; turn++) {
+                assertTrue(game.gameplay(0));
+                assertEquals(linesWritten[i][turn], Files.readString(file).split("\n").length, name + " turn " + turn);
+            }
+            game.endWithoutWinner(); // flushes and closes every file
+            String text = Files.readString(file);
+            assertEquals(9, text.split("\n").length, name); // with the exit and the final hand
+            assertTrue(text.endsWith("Player 1 final hand: " + game.getPlayers().get(0).getHandAsString()), name);
+            game.resetIDs();
+        }
+        deleteTree(directory);
+    }
+
+    /**
+     * Tests that the output of a game is still flushed and closed when writing the end of the game fails, so that no
+     * line the players wrote is lost, whether they write their own lines or an event writer writes them.
+     */
+    @Test
+    void closeOnFailureTest() throws InterruptedException {
+        int[] dealtWinning = {1, 2, 5, 5, 1, 2, 6, 6, 1, 2, 7, 7, 1, 2, 8, 8,
+                10, 10, 10, 10, 11, 11, 11, 11, 12, 12, 12, 12, 13, 13, 13, 13};
+        for (int eventQueueCapacity : new int[] {0, 16}) {
+            boolean[] closed = {false};
+            var sink = new OutputSink.Memory() {
+                @Override
+                public void writeDeck(int deck, OutputBuffer contents) throws IOException {
+                    throw new IOException("Disk full");
+                }
+
+                @Override
+                public void close(){
+                    closed[0] = true;
+                }
+            };
+            var game = new CardGame();
+            game.setOutputSink(sink);
+            game.setQuiet(true);
+            game.setAsyncEventLog(eventQueueCapacity, GameEventWriter.Backpressure.BLOCK);
+            game.setFlushPolicy(GameLog.FlushPolicy.ON_EXIT, 0); // nothing but the initial hands written before closing
+            game.setNumberOfPlayersFromString("4");
+            game.loadPack(dealtWinning);
+            game.dealCards();
+
+            var failure = assertThrows(RuntimeException.class, game::play);
+            assertEquals("Disk full", failure.getCause().getMessage());
+            assertTrue(closed[0], "capacity " + eventQueueCapacity);
+            assertTrue(sink.getPlayerText(0).contains("Player 1 wins"));
+            for (int i = 0; i < 4; i++) {
+                assertTrue(sink.getPlayerText(i).endsWith("Player " + (i + 1) + " final hand: "
+                        + game.getPlayers().get(i).getHandAsString()), "capacity " + eventQueueCapacity);
+            }
+            game.resetIDs();
+        }
+    }
+
+    /**
+     * Tests that a player's hand keeps count of its values as duplicate cards are added and removed, so that a player
+     * wins with exactly 4 cards of one value and never with 5 cards or with 2 values, that a player holding only their
+     * preferred value cannot discard, and that the hand is handed out as a copy.
+     */
+    @Test
+    void playerHandTest() {
+        var player = new Player(new GameIds(), 2, "Player 1"); // prefers 1
+        int[] discard = {0};
+        player.setDiscardStrategy((hand, handSize, preferredValue, downstreamValue, random) -> discard[0]);
+        for (int i = 0; i < 3; i++) {
+            player.addCard(7);
+            assertFalse(player.checkWin());
+        }
+        player.addCard(7);
+        assertTrue(player.checkWin());
+        player.addCard(7);
+        assertFalse(player.checkWin()); // 5 cards of one value, while taking a turn
+        assertEquals(7, player.removeCard());
+        assertTrue(player.checkWin());
+
+        for (int replaced = 1; replaced <= 4; replaced++) { // each 7 in turn replaced by a 3, the oldest first
+            player.addCard(3);
+            assertEquals(7, player.removeCard());
+            assertEquals(replaced == 4, player.checkWin(), replaced + " of 4 replaced");
+        }
+        assertEquals(List.of(3, 3, 3, 3), player.getHand());
+
+        player.getHand().clear();
+        player.getHandValues()[0] = 99;
+        assertEquals(List.of(3, 3, 3, 3), player.getHand());
+        assertArrayEquals(new int[] {3, 3, 3, 3}, player.getHandValues());
+
+        var preferring = new Player(new GameIds(), 2, "Player 1");
+        for (int i = 0; i < 5; i++) {
+            preferring.addCard(1);
+        }
+        assertThrows(IllegalStateException.class, preferring::removeCard); // every card is of the preferred value
+        assertThrows(IllegalStateException.class, () -> preferring.addCard(1));
+
+        // Against a list of the cards held, over many random turns with few values, so duplicates come and go
+        var modelled = new Player(new GameIds(), 2, "Player 1");
+        var random = new SplittableRandom(3);
+        List<Integer> held = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            held.add(2 + random.nextInt(3)); // values the player does not prefer, so any card can be discarded
+            modelled.addCard(held.get(i));
+        }
+        int wins = 0;
+        for (int turn = 0; turn < 5000; turn++) {
+            int drawn = 2 + random.nextInt(3);
+            held.add(drawn);
+            modelled.addCard(drawn);
+            assertFalse(modelled.checkWin());
+            discard[0] = random.nextInt(held.size());
+            modelled.setDiscardStrategy((hand, handSize, preferredValue, downstreamValue, r) -> discard[0]);
+            assertEquals(held.remove(discard[0]), modelled.removeCard());
+            assertEquals(held, modelled.getHand());
+            assertEquals(held.stream().distinct().count() == 1, modelled.checkWin(), "turn " + turn + ": " + held);
+            wins += modelled.checkWin() ? 1 : 0;
+        }
+        assertTrue(wins > 0);
+    }
+
+    /**
+     * Tests that players only discard cards they do not prefer, and that seeded players discard the same cards.
+     */
+    @Test
+    void seededRemoveCardTest(){
+        Player first = new Player(new GameIds(), 2, "Player 1");
+        Player second = new Player(new GameIds(), 2, "Player 1");
+        first.setRandomSeed(7);
+        second.setRandomSeed(7);
+        for (int value : new int[] {1, 2, 1, 3, 4}) {
+            first.addCard(value);
+            second.addCard(value);
+        }
+        for (int i = 0; i < 3; i++) {
+            int removed = first.removeCard();
+            assertNotEquals(1, removed);
+            assertEquals(removed, second.removeCard());
+        }
+        assertThrows(IllegalStateException.class, first::removeCard);
+    }
+
+    /**
+     * Tests the cards chosen by the built-in discard strategies, none of which may be of the preferred value.
+     */
+    @Test
+    void discardStrategyTest(){
+        int[] hand = {1, 3, 2, 3, 1};
+        var random = new SplittableRandom(1);
+        assertEquals(1, DiscardStrategy.BuiltIn.FIRST_NON_PREFERRED.chooseDiscard(hand, 5, 1, 3, random));
+        assertEquals(2, DiscardStrategy.BuiltIn.KEEP_MOST_FREQUENT.chooseDiscard(hand, 5, 1, 3, random));
+        assertEquals(1, DiscardStrategy.BuiltIn.FEED_DOWNSTREAM.chooseDiscard(hand, 5, 1, 3, random));
+        assertEquals(2, DiscardStrategy.BuiltIn.STARVE_DOWNSTREAM.chooseDiscard(hand, 5, 1, 3, random));
+        for (int i = 0; i < 100; i++) {
+            assertNotEquals(1, hand[DiscardStrategy.BuiltIn.RANDOM.chooseDiscard(hand, 5, 1, 3, random)]);
+        }
+
+        Player player = new Player(new GameIds(), 2, "Player 1");
+        player.setDiscardStrategy((cards, size, preferred, downstream, r) -> 0);
+        for (int value : hand) {
+            player.addCard(value);
+        }
+        assertThrows(IllegalStateException.class, player::removeCard);
+    }
+
+    /**
+     * Tests that games played by players sharing a pool of fewer threads than players still finish, under both
+     * turn locking modes.
+     */
+    @Test
+    void pooledPlayersTest() throws InterruptedException {
+        for (CardGame.TurnLocking locking : CardGame.TurnLocking.values()) {
+            for (long seed = 0; seed < 20; seed++) {
+                var game = new CardGame();
+                game.setOutputDirectory(null);
+                game.setQuiet(true);
+                game.setTurnLocking(locking);
+                game.setPlayerThreads(CardGame.PlayerThreads.POOLED, 2);
+                game.setNumberOfPlayersFromString("6");
+                game.loadPack(BatchSimulator.generatePack(6, seed));
+                game.dealCards();
+
+                int winner = game.play();
+                assertTrue(game.getPlayers().get(winner).checkWin());
+            }
+        }
+    }
+
+    /**
+     * Tests that players run on virtual threads where Java has them, under both turn locking modes, and that asking
+     * for them elsewhere fails straight away. Only the failure is exercised by a build on Java 17.
+     */
+    @Test
+    void virtualPlayersTest() throws InterruptedException {
+        assertEquals(Runtime.version().feature() >= 21, CardGame.hasVirtualThreads());
+        if (!CardGame.hasVirtualThreads()) {
+            assertThrows(UnsupportedOperationException.class,
+                    () -> new CardGame().setPlayerThreads(CardGame.PlayerThreads.VIRTUAL, 0));
+            return;
+        }
+        for (CardGame.TurnLocking locking : CardGame.TurnLocking.values()) {
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            game.setPlayerThreads(CardGame.PlayerThreads.VIRTUAL, 0);
+            game.setNumberOfPlayersFromString("4");
+            game.loadPack(BatchSimulator.generatePack(4, 3));
+            game.dealCards();
+            int winner = game.play();
+            assertTrue(game.getPlayers().get(winner).checkWin());
+        }
+    }
+
+    /**
+     * Tests that a player interrupted while waiting for a turn stops waiting with the interrupt status of its thread
+     * still set, and that interrupting a player's thread ends the game without a winner for every player.
+     */
+    @Test
+    void interruptedPlayerTest() throws InterruptedException {
+        for (var locking : CardGame.TurnLocking.values()) {
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setTurnLocking(locking);
+            game.setNumberOfPlayersFromString("2");
+            int[] pack = new int[16];
+            for (int i = 0; i < pack.length; i++) {
+                pack[i] = i + 1; // no value appears twice, so nobody can win
+            }
+            game.loadPack(pack);
+            game.dealCards();
+            CardDeck drawDeck = game.getDecks().get(1);
+            while (!drawDeck.isEmpty()) {
+                drawDeck.drawCard();
+            }
+            boolean[] takenAndInterrupted = {true, false};
+            Thread waiting = new Thread(() -> {
+                takenAndInterrupted[0] = takeTurn(game, 1);
+                takenAndInterrupted[1] = Thread.currentThread().isInterrupted();
+            });
+            waiting.start();
+            while (waiting.getState() != Thread.State.WAITING) { // waiting on the empty deck
+                assertTrue(waiting.isAlive());
+                Thread.sleep(1);
+            }
+            waiting.interrupt();
+            waiting.join(5000);
+            assertFalse(waiting.isAlive());
+            assertFalse(takenAndInterrupted[0], locking.name());
+            assertTrue(takenAndInterrupted[1], locking.name());
+            game.resetIDs();
+
+            var played = new CardGame();
+            played.setOutputDirectory(null);
+            played.setQuiet(true);
+            played.setTurnLocking(locking);
+            played.setNumberOfPlayersFromString("3");
+            pack = new int[24];
+            for (int i = 0; i < pack.length; i++) {
+                pack[i] = i + 1;
+            }
+            played.loadPack(pack);
+            played.dealCards();
+            int[] winner = {0};
+            Thread playing = new Thread(() -> {
+                try {
+                    winner[0] = played.play();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            playing.start();
+            while (played.getTurnsTaken() == 0) {
+                Thread.sleep(1);
+            }
+            Thread.getAllStackTraces().keySet().stream()
+                    .filter(thread -> thread.getName().equals("thread1") && thread.isAlive())
+                    .forEach(Thread::interrupt);
+            playing.join(10_000);
+            assertFalse(playing.isAlive(), locking.name());
+            assertEquals(-1, winner[0], locking.name());
+            played.resetIDs();
+        }
+    }
+
+    /**
+     * Tests that a game nobody can win ends without a winner once it is ended from outside, whether its players
+     * have threads of their own, waiting on their decks, or share a pool, parked on their decks.
+     */
+    @Test
+    void endWithoutWinnerTest() throws Exception {
+        for (int run = 0; run < 4; run++) {
+            CardGame.TurnLocking locking = CardGame.TurnLocking.values()[run % 2];
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            if (run >= 2) {
+                game.setPlayerThreads(CardGame.PlayerThreads.POOLED, 1);
+            }
+            game.setNumberOfPlayersFromString("3");
+            int[] pack = new int[24];
+            for (int i = 0; i < pack.length; i++) {
+                pack[i] = i; // no value appears four times
+            }
+            game.loadPack(pack);
+            game.dealCards();
+
+            int[] winner = {0};
+            Thread playing = new Thread(() -> {
+                try {
+                    winner[0] = game.play();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            playing.start();
+            while (game.getTurnsTaken() == 0) {
+                Thread.sleep(1);
+            }
+            game.endWithoutWinner();
+            playing.join(10_000);
+            assertFalse(playing.isAlive());
+            assertEquals(-1, winner[0]);
+        }
+    }
+
+    /**
+     * Tests that a game has exactly one winner when two players could both win, whether dealt winning hands or each
+     * drawing their fourth card on their first turn, and that every other player is informed of that one winner.
+     */
+    @Test
+    void singleWinnerTest() throws InterruptedException {
+        int[] dealtWinning = {1, 2, 5, 5, 1, 2, 6, 6, 1, 2, 7, 7, 1, 2, 8, 8,
+                10, 10, 10, 10, 11, 11, 11, 11, 12, 12, 12, 12, 13, 13, 13, 13};
+        int[] firstTurnWinning = {1, 2, 5, 5, 1, 2, 6, 6, 1, 2, 7, 7, 9, 9, 8, 8,
+                1, 2, 10, 10, 11, 11, 12, 12, 13, 13, 14, 14, 15, 15, 16, 16};
+        for (int run = 0; run < 40; run++) {
+            CardGame.TurnLocking locking = CardGame.TurnLocking.values()[run % 2];
+            var memory = new OutputSink.Memory();
+            var game = new CardGame();
+            game.setOutputSink(memory);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            game.setRandomSeed(run);
+            game.setNumberOfPlayersFromString("4");
+            game.loadPack(run < 4 ? dealtWinning : firstTurnWinning);
+            game.dealCards();
+            int winner = game.play();
+
+            if (run < 4) {
+                assertEquals(0, winner, locking.name()); // hands as dealt are checked in order of the players
+            } else {
+                assertTrue(winner == 0 || winner == 1, locking.name());
+            }
+            assertEquals(winner, game.winner);
+            for (int i = 0; i < 4; i++) {
+                String text = memory.getPlayerText(i);
+                assertEquals(i == winner, text.contains("Player " + (i + 1) + " wins"), locking.name());
+                assertEquals(i != winner, text.contains("that player " + (winner + 1) + " has won"), locking.name());
+                assertFalse(text.contains("that player " + (2 - winner) + " has won"), locking.name());
+            }
+            game.resetIDs();
+        }
+    }
+
+    /**
+     * Tests that once a game has been stopped, no player can win it, even those holding or about to draw a winning
+     * hand, and that no player is told of a winner.
+     */
+    @Test
+    void stoppedGameTest() throws InterruptedException {
+        int[] firstTurnWinning = {1, 2, 5, 5, 1, 2, 6, 6, 1, 2, 7, 7, 1, 9, 8, 8,
+                1, 2, 10, 10, 11, 11, 12, 12, 13, 13, 14, 14, 15, 15, 16, 16};
+        for (var locking : CardGame.TurnLocking.values()) {
+            var memory = new OutputSink.Memory();
+            var game = new CardGame();
+            game.setOutputSink(memory);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            game.setNumberOfPlayersFromString("4");
+            game.loadPack(firstTurnWinning); // player 1 is dealt a winning hand, player 2 draws one
+            game.dealCards();
+            game.endWithoutWinner();
+
+            assertEquals(-1, game.play(), locking.name());
+            game.checkWinners();
+            assertFalse(locking == CardGame.TurnLocking.MONITOR ? game.gameplay(1) : game.stripedGameplay(1));
+            assertEquals(-1, game.winner, locking.name());
+            assertEquals(0, game.getTurnsTaken(), locking.name());
+            for (int i = 0; i < 4; i++) {
+                assertFalse(memory.getPlayerText(i).contains(" wins"), locking.name());
+                assertFalse(memory.getPlayerText(i).contains(" has won"), locking.name());
+            }
+            game.resetIDs();
+        }
+    }
+
+    /**
+     * Tests that replaying the recorded schedule of a game played on many threads writes the same output files,
+     * byte for byte, under both turn locking modes.
+     */
+    @Test
+    void replayRecordedScheduleTest() throws Exception {
+        for (CardGame.TurnLocking locking : CardGame.TurnLocking.values()) {
+            Path played = Files.createTempDirectory("played");
+            var game = deterministicGame(played, 77);
+            game.setTurnLocking(locking);
+            game.recordSchedule();
+            game.dealCards();
+            int winner = game.play();
+            TurnSchedule schedule = game.getRecordedSchedule();
+            assertEquals(game.getTurnsTaken(), schedule.getTurns().length);
+
+            Path replayed = Files.createTempDirectory("replayed");
+            var replay = deterministicGame(replayed, 0);
+            replay.dealCards();
+            assertEquals(winner, replay.playDeterministic(schedule));
+            assertSameFiles(played, replayed);
+        }
+    }
+
+    /**
+     * Tests that games played on a single thread, with the same seed and schedule, write the same output files.
+     */
+    @Test
+    void deterministicGameTest() throws Exception {
+        Path first = Files.createTempDirectory("first");
+        var game = deterministicGame(first, 5);
+        game.dealCards();
+        int winner = game.playDeterministic(TurnSchedule.random(5, 9));
+
+        Path second = Files.createTempDirectory("second");
+        var again = deterministicGame(second, 5);
+        again.dealCards();
+        assertEquals(winner, again.playDeterministic(TurnSchedule.random(5, 9)));
+        assertSameFiles(first, second);
+    }
+
+    /**
+     * Sets up a 5 player game on a fixed random pack, writing its output files to a directory.
+     */
+    private static CardGame deterministicGame(Path outputDirectory, long seed) {
+        var game = new CardGame();
+        game.setOutputDirectory(outputDirectory + File.separator);
+        game.setQuiet(true);
+        game.setNumberOfPlayersFromString("5");
+        game.setRandomSeed(seed);
+        game.loadPack(BatchSimulator.generatePack(5, 1234));
+        return game;
+    }
+
+    /**
+     * Asserts that two directories hold the same files, with the same contents.
+     */
+    private static void assertSameFiles(Path expected, Path actual) throws IOException {
+        List<Path> files;
+        try (var listing = Files.list(expected)) {
+            files = listing.sorted().toList();
+        }
+        assertEquals(10, files.size());
+        for (Path file : files) {
+            assertArrayEquals(Files.readAllBytes(file), Files.readAllBytes(actual.resolve(file.getFileName())), file.toString());
+        }
+    }
+
+    /**
+     * Tests that pack errors name the line they are on.
+     */
+    @Test
+    void packReaderLineNumberTest() throws IOException {
+        Path pack = Files.createTempFile("pack", ".txt");
+        Files.writeString(pack, "1\r\n2\r\nx3\r\n4\r\n");
+        var notNumber = assertThrows(NumberFormatException.class, () -> PackReader.read(pack.toString(), 4));
+        assertTrue(notNumber.getMessage().startsWith("Line 3 "));
+
+        Files.writeString(pack, "1\n2\n3\n-4\n");
+        var negative = assertThrows(NumberFormatException.class, () -> PackReader.read(pack.toString(), 4));
+        assertTrue(negative.getMessage().startsWith("Line 4 "));
+
+        Files.writeString(pack, "1\n2\n3\n4\n5\n");
+        var tooMany = assertThrows(ArrayIndexOutOfBoundsException.class, () -> PackReader.read(pack.toString(), 4));
+        assertTrue(tooMany.getMessage().contains("from line 5"));
+
+        Files.writeString(pack, "1\r\n2\r\n3"); // the last line without a line break
+        var tooFew = assertThrows(ArrayIndexOutOfBoundsException.class, () -> PackReader.read(pack.toString(), 4));
+        assertTrue(tooFew.getMessage().endsWith(" ends at line 3 with 3 cards, the game needs 4"), tooFew.getMessage());
+        Files.writeString(pack, "");
+        tooFew = assertThrows(ArrayIndexOutOfBoundsException.class, () -> PackReader.read(pack.toString(), 4));
+        assertTrue(tooFew.getMessage().endsWith(" ends at line 0 with 0 cards, the game needs 4"), tooFew.getMessage());
+        Files.delete(pack);
+    }
+
+    /**
+     * Tests that the pack reader accepts exactly the packs accepted when reading line by line, with the same values,
+     * on random files of digits, signs, letters and line breaks.
+     */
+    @Test
+    void packReaderMatchesLineReaderTest() throws IOException {
+        Path pack = Files.createTempFile("pack", ".txt");
+        var random = new SplittableRandom(11);
+        String alphabet = "0123456789012345678901234567899-+a \r\n\n\n";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder contents = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int c = 0; c < length; c++) {
+                contents.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            Files.writeString(pack, contents);
+
+            List<Integer> expected = new ArrayList<>();
+            boolean valid = true;
+            try (BufferedReader reader = new BufferedReader(new FileReader(pack.toFile()))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int value = Integer.parseInt(line);
+                    valid &= value >= 0;
+                    expected.add(value);
+                }
+            } catch (NumberFormatException e) {
+                valid = false;
+            }
+            try {
+                int[] values = PackReader.read(pack.toString(), expected.size());
+                assertTrue(valid, contents.toString());
+                assertEquals(expected, Arrays.stream(values).boxed().toList(), contents.toString());
+            } catch (NumberFormatException e) {
+                assertFalse(valid, contents.toString());
+            }
+        }
+        Files.delete(pack);
+    }
+
+    /**
+     * Tests that a text pack converted to a binary pack loads the same cards, mapped or read, that a binary pack
+     * is checked against the rules of the game from its header before its corrupted cards are noticed, and that
+     * cards outside the range of values in the header are rejected even when they match the checksum.
+     */
+    @Test
+    void binaryPackTest() throws IOException {
+        Path text = Files.createTempFile("pack", ".txt");
+        Path binary = Files.createTempFile("pack", BinaryPack.EXTENSION);
+        int[] values = BatchSimulator.generatePack(4, 5);
+        values[0] = 300; // a value which needs two bytes
+        StringBuilder contents = new StringBuilder();
+        for (int value : values) {
+            contents.append(value).append("\r\n");
+        }
+        Files.writeString(text, contents);
+        BinaryPack.convert(text.toString(), binary.toString());
+        assertArrayEquals(values, BinaryPack.read(binary.toString(), 32));
+        assertEquals(32 + 2 * 32, Files.size(binary));
+
+        BinaryPack mapped = BinaryPack.map(binary.toString());
+        assertEquals(4, mapped.getNumberOfPlayers());
+        assertEquals(300, mapped.getValue(0));
+        assertEquals(values[31], mapped.getValue(31));
+
+        var game = new CardGame();
+        game.setNumberOfPlayersFromString("4");
+        assertTrue(game.loadPackFromFile(binary.toString()));
+        game.resetIDs();
+
+        byte[] bytes = Files.readAllBytes(binary);
+        bytes[BinaryPack.HEADER_SIZE + 5] ^= 1;
+        Files.write(binary, bytes);
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> BinaryPack.read(binary.toString(), 40));
+        assertThrows(IOException.class, () -> BinaryPack.read(binary.toString(), 32));
+        Files.write(binary, Arrays.copyOf(bytes, bytes.length - 1));
+        assertThrows(IOException.class, () -> BinaryPack.map(binary.toString()));
+
+        values[0] = 70_000; // a value which needs four bytes
+        BinaryPack.write(values, 4, binary.toString());
+        assertArrayEquals(values, BinaryPack.read(binary.toString(), 32));
+        bytes = Files.readAllBytes(binary);
+        ByteBuffer.wrap(bytes).putInt(20, 69_999); // a highest value below that of the first card
+        Files.write(binary, bytes);
+        assertThrows(IOException.class, () -> BinaryPack.read(binary.toString(), 32));
+        ByteBuffer file = ByteBuffer.wrap(bytes).putInt(20, Integer.MAX_VALUE)
+                .putInt(BinaryPack.HEADER_SIZE, 0x80000000); // 2^31, which reads as a negative int
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, BinaryPack.HEADER_SIZE, bytes.length - BinaryPack.HEADER_SIZE);
+        file.putInt(24, (int) crc.getValue());
+        Files.write(binary, bytes);
+        assertThrows(IOException.class, () -> BinaryPack.read(binary.toString(), 32));
+        Files.delete(text);
+        Files.delete(binary);
+    }
+
+    /**
+     * Tests that a batch plays every game it is asked to, that a batch of fewer than 1 player, game or game played
+     * at a time is rejected before any game is played, and that a batch dealt from a directory of packs plays only the
+     * packs valid for its players, naming each pack it skips.
+     */
+    @Test
+    void batchSimulatorTest() throws Exception {
+        var batch = new BatchSimulator(4, 20, 2, null, new PackGenerator(PackGenerator.Layout.UNIFORM), 1,
+                CardGame.TurnLocking.STRIPED, DiscardStrategy.BuiltIn.RANDOM, false, null);
+        assertEquals(20, Arrays.stream(batch.run().getWins()).sum());
+        for (String option : new String[] {"--games=0", "--players=0", "--parallelism=0", "--games=-1"}) {
+            assertThrows(IllegalArgumentException.class, () -> BatchSimulator.main(new String[] {option}), option);
+        }
+
+        var skipped = new ByteArrayOutputStream();
+        List<String> packs = BatchSimulator.packsIn(TEST_PACKS_PATH, 4, new PrintStream(skipped, true));
+        assertEquals(List.of(TEST_PACKS_PATH + "four.txt"), packs);
+        for (String invalid : new String[] {"eight.txt", "five.txt", "four-invalid-1.txt", "four-invalid-2.txt",
+                "four-invalid-3.txt", "ten.txt"}) {
+            assertTrue(skipped.toString().contains("Skipping " + invalid + ","), invalid);
+        }
+        packs = BatchSimulator.packsIn(TEST_PACKS_PATH, 10, new PrintStream(new ByteArrayOutputStream()));
+        assertEquals(List.of(TEST_PACKS_PATH + "ten.txt"), packs);
+        batch = new BatchSimulator(10, 6, 2, packs, null, 1, CardGame.TurnLocking.STRIPED,
+                DiscardStrategy.BuiltIn.RANDOM, false, new PackCache(1000));
+        assertEquals(6, Arrays.stream(batch.run().getWins()).sum());
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchSimulator.packsIn(TEST_PACKS_PATH, 3, new PrintStream(new ByteArrayOutputStream())));
+        assertThrows(IllegalArgumentException.class,
+                () -> BatchSimulator.packsIn(TEST_PACKS_PATH + "missing", 4, System.err));
+    }
+
+    /**
+     * Tests that games dealt from a cached pack are dealt the same cards as from the file, that the file is read once
+     * until it is modified, and that the least recently used pack is evicted once the cache is full.
+     */
+    @Test
+    void packCacheTest() throws IOException {
+        Path first = Files.createTempFile("pack", ".txt");
+        Path second = Files.createTempFile("pack", ".txt");
+        StringBuilder contents = new StringBuilder();
+        for (int value : BatchSimulator.generatePack(4, 9)) {
+            contents.append(value).append("\n");
+        }
+        Files.writeString(first, contents);
+        Files.writeString(second, contents);
+        var cache = new PackCache(40);
+
+        var fromFile = new CardGame();
+        fromFile.setNumberOfPlayersFromString("4");
+        fromFile.setOutputDirectory(null);
+        fromFile.loadPackFromFile(first.toString());
+        fromFile.dealCards();
+        fromFile.resetIDs();
+        for (int game = 0; game < 3; game++) {
+            var cached = new CardGame();
+            cached.setNumberOfPlayersFromString("4");
+            cached.setOutputDirectory(null);
+            assertTrue(cached.loadPackFromCache(cache, first.toString()));
+            cached.dealCards();
+            for (int i = 0; i < 4; i++) {
+                assertArrayEquals(fromFile.getPlayers().get(i).getHandValues(),
+                        cached.getPlayers().get(i).getHandValues());
+                assertEquals(fromFile.getDecks().get(i).getCards(), cached.getDecks().get(i).getCards());
+            }
+            cached.resetIDs();
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+        assertThrows(ArrayIndexOutOfBoundsException.class, () -> cache.get(first.toString(), 40));
+        int[] copy = cache.get(first.toString(), 32);
+        java.util.Arrays.fill(copy, -1); // a copy, so the games dealt from the cache are unaffected
+        assertArrayEquals(PackReader.readAll(first.toString()), cache.get(first.toString(), 32));
+
+        Files.setLastModifiedTime(first, java.nio.file.attribute.FileTime.fromMillis(0));
+        cache.get(first.toString(), 32);
+        assertEquals(2, cache.getMisses());
+        assertEquals(32, cache.getCachedCards());
+
+        cache.get(second.toString(), 32); // 64 cards do not fit, so the first pack is evicted
+        assertEquals(1, cache.getEvictions());
+        cache.get(first.toString(), 32);
+        assertEquals(4, cache.getMisses());
+
+        Files.writeString(second, "-3\n" + contents.substring(contents.indexOf("\n") + 1));
+        for (int attempt = 0; attempt < 2; attempt++) { // an illegal pack is never cached, so it is read every time
+            var game = new CardGame();
+            game.setNumberOfPlayersFromString("4");
+            assertThrows(NumberFormatException.class, () -> game.loadPackFromCache(cache, second.toString()));
+        }
+        assertEquals(6, cache.getMisses());
+        Files.delete(first);
+        Files.delete(second);
+    }
+
+    /**
+     * Tests that every layout of generated pack is valid and reproducible for any number of players, that nobody can
+     * collect four of a value in a pack nobody can win, and that player 1 wins on exactly their k-th turn.
+     */
+    @Test
+    void packGeneratorTest() throws InterruptedException {
+        for (var layout : PackGenerator.Layout.values()) {
+            for (int players : new int[] {1, 2, 5, 17}) {
+                int[] pack = new PackGenerator(layout).generate(players, 3);
+                assertEquals(8 * players, pack.length);
+                assertArrayEquals(pack, new PackGenerator(layout).generate(players, 3));
+                assertTrue(Arrays.stream(pack).allMatch(value -> value >= 1), layout.name());
+            }
+        }
+        int[] counts = new int[100];
+        for (int value : new PackGenerator(PackGenerator.Layout.NEVER_WINNABLE).generate(30, 1)) {
+            counts[value]++;
+        }
+        assertTrue(Arrays.stream(counts).allMatch(count -> count <= 3));
+        assertThrows(IllegalArgumentException.class, () -> CardGame.main(new String[]{"--generate=never_winnable"}));
+
+        for (int players = 2; players <= 5; players++) { // seats four back wrap round to the player at small tables
+            int[] pack = new PackGenerator(PackGenerator.Layout.DECK_STARVING).generate(players, 0);
+            for (int player = 0; player < players; player++) {
+                int own = 0;
+                for (int round = 0; round < 8; round++) {
+                    own += pack[round * players + player] == player + 1 ? 1 : 0;
+                }
+                assertEquals(players == 2 ? 4 : players <= 4 ? 2 : 0, own);
+            }
+        }
+
+        for (int k = 1; k <= 4; k++) {
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setQuiet(true);
+            game.setNumberOfPlayersFromString("6");
+            game.setRandomSeed(k);
+            game.loadPack(PackGenerator.parse("win_in_k:" + k).generate(6, k));
+            game.dealCards();
+            assertEquals(0, game.play());
+            assertEquals(k, game.getPlayers().get(0).getTurnsTaken());
+            game.resetIDs();
+        }
+        assertThrows(IllegalArgumentException.class, () -> PackGenerator.parse("win_in_k:5"));
+    }
+
+    /**
+     * Tests that the latency histogram gives percentiles to within the width of a bucket, and that the metrics of a
+     * game count every turn and time every turn sampled.
+     */
+    @Test
+    void metricsTest() throws InterruptedException {
+        var histogram = new LatencyHistogram();
+        for (long nanos = 1; nanos <= 100_000; nanos++) {
+            histogram.record(nanos);
+        }
+        assertEquals(100_000, histogram.getCount());
+        assertEquals(50_000, histogram.getValueAtPercentile(50), 50_000 * 0.04);
+        assertEquals(99_000, histogram.getValueAtPercentile(99), 99_000 * 0.04);
+        assertEquals(100_000, histogram.getMax(), 100_000 * 0.04);
+        assertEquals(0, histogram.copy().minus(histogram).getCount());
+
+        for (var locking : CardGame.TurnLocking.values()) {
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            game.setNumberOfPlayersFromString("6");
+            game.setRandomSeed(4);
+            game.setMetrics(new GameMetrics(6, 1));
+            game.loadPack(BatchSimulator.generatePack(6, 4));
+            game.dealCards();
+            game.play();
+            var snapshot = game.getMetrics().snapshot();
+            assertEquals(game.getTurnsTaken(), Arrays.stream(snapshot.getTurns()).sum(), locking.name());
+            assertEquals(game.getTurnsTaken(), snapshot.getTurn().getCount(), locking.name());
+            assertEquals(game.getTurnsTaken(), snapshot.getLockHold().getCount(), locking.name());
+            // every hand is checked once as dealt, then each turn checks the hand of the player taking it
+            assertEquals(6 + game.getTurnsTaken(), snapshot.getWinChecks(), locking.name());
+            assertEquals(0, snapshot.since(snapshot).getWinChecks());
+            game.resetIDs();
+        }
+    }
+
+    /**
+     * Tests whether a flight recording of a game holds a turn event for every turn and the win, with the events
+     * numbering players and decks from 1.
+     */
+    @Test
+    void flightEventsTest() throws IOException, InterruptedException {
+        Path recordingFile = Files.createTempFile("cardgame", ".jfr");
+        var game = new CardGame();
+        game.setOutputDirectory(null);
+        game.setQuiet(true);
+        game.setNumberOfPlayersFromString("4");
+        game.setRandomSeed(4);
+        game.loadPack(BatchSimulator.generatePack(4, 4));
+        game.dealCards();
+        var recording = FlightEvents.record();
+        game.play();
+        FlightEvents.dump(recording, recordingFile.toString());
+
+        var events = RecordingFile.readAllEvents(recordingFile);
+        Files.delete(recordingFile);
+        var turns = events.stream().filter(event -> event.getEventType().getName().equals("cardgame.Turn")).toList();
+        var wins = events.stream().filter(event -> event.getEventType().getName().equals("cardgame.GameWon")).toList();
+        assertEquals(game.getTurnsTaken(), turns.size());
+        assertTrue(turns.stream().allMatch(event -> event.getInt("player") >= 1 && event.getInt("player") <= 4
+                && event.getInt("discardDeck") == event.getInt("player") % 4 + 1));
+        assertEquals(1, wins.size());
+        assertEquals(game.winner + 1, wins.get(0).getInt("winner"));
+        game.resetIDs();
+    }
+
+    /**
+     * Tests that cards are interned by value, so that a large pack of cards allocates no card objects once its values
+     * have been seen, and that an encoded card keeps its ID and value.
+     */
+    @Test
+    void cardFlyweightTest() {
+        assertSame(Card.of(7), Card.of(7));
+        assertSame(Card.of(100_000), Card.of(100_000));
+        assertNotSame(Card.of(7), Card.of(8));
+        assertEquals(100_000, Card.of(100_000).getValue());
+        assertThrows(IllegalArgumentException.class, () -> Card.of(-1));
+
+        int[] values = BatchSimulator.generatePack(125_000, 3); // a million cards
+        Card[] pack = new Card[values.length];
+        for (int value : values) {
+            Card.of(value);
+        }
+        var threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < values.length; i++) {
+            pack[i] = Card.of(values[i]);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < values.length, allocated + " bytes allocated for " + values.length + " cards");
+        assertEquals(values[values.length - 1], pack[values.length - 1].getValue());
+
+        long card = Card.encode(Integer.MAX_VALUE, 125_000);
+        assertEquals(Integer.MAX_VALUE, Card.idOf(card));
+        assertEquals(125_000, Card.valueOf(card));
+        assertEquals(-1, Card.idOf(Card.encode(-1, 0)));
+    }
+
+    /**
+     * Tests that the path of every card rebuilt from a game's journal leaves it where the game ended with it, in a
+     * hand or a deck, under both turn lockings, and that a journal written to a file gives the same paths.
+     */
+    @Test
+    void cardJournalTest() throws InterruptedException, IOException {
+        for (var locking : CardGame.TurnLocking.values()) {
+            int[] pack = BatchSimulator.generatePack(5, 8);
+            var game = new CardGame();
+            game.setOutputDirectory(null);
+            game.setQuiet(true);
+            game.setTurnLocking(locking);
+            game.setNumberOfPlayersFromString("5");
+            game.setRandomSeed(8);
+            game.setJournal(new CardJournal(5));
+            game.loadPack(pack);
+            game.dealCards();
+            game.play();
+
+            var journal = game.getJournal();
+            assertEquals(8 * 5 + 2 * game.getTurnsTaken(), journal.getMoveCount(), locking.name());
+            List<List<Integer>> hands = new ArrayList<>();
+            List<List<Integer>> decks = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                hands.add(new ArrayList<>());
+                decks.add(new ArrayList<>());
+            }
+            for (int card = 0; card < pack.length; card++) {
+                var path = journal.pathOf(card);
+                var last = path.get(path.size() - 1);
+                boolean inHand = last.getMove() == CardJournal.Move.DEALT_TO_HAND
+                        || last.getMove() == CardJournal.Move.DRAWN;
+                (inHand ? hands : decks).get(last.getTo()).add(pack[card]);
+            }
+            for (int i = 0; i < 5; i++) {
+                var hand = new ArrayList<>(game.getPlayers().get(i).getHand());
+                Collections.sort(hand);
+                Collections.sort(hands.get(i));
+                assertEquals(hand, hands.get(i), locking.name());
+                var deck = new ArrayList<>(game.getDecks().get(i).getCards());
+                Collections.sort(deck);
+                Collections.sort(decks.get(i));
+                assertEquals(deck, decks.get(i), locking.name());
+            }
+
+            Path journalFile = Files.createTempFile("cards", ".journal");
+            journal.writeToFile(journalFile.toString());
+            var read = CardJournal.readFromFile(journalFile.toString());
+            Files.delete(journalFile);
+            assertEquals(journal.pathOf(7).toString(), read.pathOf(7).toString());
+            game.resetIDs();
+        }
+    }
+
+    /**
+     * Tests that lines formatted into an output buffer are exactly those string concatenation gives, for numbers in
+     * and beyond the cached encodings, and that formatting a turn's lines allocates nothing once the buffer is large
+     * enough.
+     */
+    @Test
+    void outputBufferTest() {
+        var buffer = new OutputBuffer(16);
+        for (int number : new int[] {0, 9, 10, 1023, 1024, 99_999, -1, -1024, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            buffer.clear();
+            assertEquals(String.valueOf(number), buffer.append(number).toString());
+        }
+        buffer.clear();
+        assertEquals("[3, 1500, 0]", buffer.appendList(new int[] {3, 1500, 0}).toString());
+        buffer.clear();
+        assertEquals("[]", buffer.appendList(new int[0]).toString());
+        assertEquals("\nPlayer 2 draws a 1500 from deck 2", GameEvent.draw(1, 1500, 1).toString());
+        assertEquals("\nPlayer 3 has informed player 1 that player 3 has won", GameEvent.informed(0, 2).toString());
+        assertEquals("\nPlayer 1 final hand: 4 4 1024 7", GameEvent.finalHand(0, new int[] {4, 4, 1024, 7}).toString());
+
+        var player = new Player(new GameIds(), 2, "Player 1");
+        assertEquals("", player.getHandAsString());
+        player.addCard(5);
+        player.addCard(1200);
+        assertEquals("5 1200", player.getHandAsString()); // only the cards held, never the unused slots
+        player.addCard(5);
+        player.addCard(5);
+        buffer.clear();
+        GameEvent.writeHand(buffer, 0, player);
+        assertEquals("\nPlayer 1's current hand is " + player.getHandAsString(), buffer.toString());
+        assertEquals("5 1200 5 5", player.getHandAsString());
+        player.addCard(3);
+        assertEquals("5 1200 5 5 3", player.getHandAsString()); // as held while taking a turn
+
+        var threads = (com.sun.management.ThreadMXBean) java.lang.management.ManagementFactory.getThreadMXBean();
+        buffer = new OutputBuffer(1 << 20);
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int turn = 0; turn < 5000; turn++) {
+            GameEvent.writeDraw(buffer, 0, turn, 0);
+            GameEvent.writeDiscard(buffer, 0, turn, 1);
+            GameEvent.writeHand(buffer, 0, player);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        assertTrue(allocated < 1000, allocated + " bytes allocated formatting 5000 turns");
+    }
+
+    /**
+     * Tests that every output sink gets the bytes the output files get, from a game played the same way: in memory,
+     * and in a memory mapped log from which the files are rebuilt, and that a null sink plays the game to the end.
+     */
+    @Test
+    void outputSinkTest() throws Exception {
+        Path files = Files.createTempDirectory("files");
+        var game = deterministicGame(files, 5);
+        game.dealCards();
+        int winner = game.playDeterministic(TurnSchedule.random(5, 9));
+
+        var memory = new OutputSink.Memory();
+        var inMemory = deterministicGame(files, 5);
+        inMemory.setOutputSink(memory);
+        inMemory.dealCards();
+        assertEquals(winner, inMemory.playDeterministic(TurnSchedule.random(5, 9)));
+        for (int i = 0; i < 5; i++) {
+            assertArrayEquals(Files.readAllBytes(files.resolve("player" + (i + 1) + "_output.txt")), memory.getPlayerOutput(i));
+            assertArrayEquals(Files.readAllBytes(files.resolve("deck" + (i + 1) + "_output.txt")), memory.getDeckOutput(i));
+        }
+        assertTrue(memory.getPlayerText(winner).endsWith("final hand: " + inMemory.getPlayers().get(winner).getHandAsString()));
+
+        Path log = Files.createTempFile("game", ".log");
+        var mapped = deterministicGame(files, 5);
+        mapped.setOutputSink(OutputSink.parse("mmap:" + log, null));
+        mapped.dealCards();
+        assertEquals(winner, mapped.playDeterministic(TurnSchedule.random(5, 9)));
+        Path rebuilt = Files.createTempDirectory("rebuilt");
+        MappedOutputLog.writeFiles(log.toString(), rebuilt.toString());
+        assertSameFiles(files, rebuilt);
+
+        var discarded = deterministicGame(files, 5);
+        discarded.setOutputSink(OutputSink.parse("null", null));
+        discarded.dealCards();
+        assertEquals(winner, discarded.playDeterministic(TurnSchedule.random(5, 9)));
+        assertThrows(IllegalArgumentException.class, () -> OutputSink.parse("mmap", null));
+        assertThrows(IllegalArgumentException.class, () -> OutputSink.parse("printer", null));
+        deleteTree(files);
+        deleteTree(rebuilt);
+        Files.delete(log);
+    }
+
+    /**
+     * Tests that players appending to a memory mapped log all at once lose none of their output and keep it in order,
+     * with records which do not fit in the rest of a segment starting the next, so that the files rebuilt from the log
+     * are exactly the output captured in memory.
+     */
+    @Test
+    void mappedOutputLogConcurrencyTest() throws Exception {
+        int writers = 4;
+        int segmentSize = 4096;
+        int records = 500;
+        Path log = Files.createTempFile("game", ".log");
+        var mapped = new MappedOutputLog(log.toString(), segmentSize);
+        var memory = new OutputSink.Memory();
+        mapped.open(writers);
+        memory.open(writers);
+
+        var start = new java.util.concurrent.CountDownLatch(1);
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> threads = new ArrayList<>();
+        for (int w = 0; w < writers; w++) {
+            int writer = w;
+            Thread thread = new Thread(() -> {
+                var random = new SplittableRandom(writer);
+                var buffer = new OutputBuffer(64);
+                try {
+                    start.await();
+                    for (int record = 0; record < records; record++) {
+                        int lines = 1 + random.nextInt(60); // up to about 1200 bytes, so many records cross a segment
+                        boolean deck = record % 5 == 4;
+                        for (OutputSink sink : new OutputSink[] {mapped, memory}) {
+                            for (int line = 0; line < lines; line++) {
+                                buffer.append("\nPlayer ").append(writer + 1).append(" line ").append(record)
+                                        .append(" ").append(line);
+                            }
+                            if (deck) {
+                                sink.writeDeck(writer, buffer);
+                            } else {
+                                sink.writePlayer(writer, buffer);
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failures.add(e);
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        mapped.close();
+        assertEquals(List.of(), failures);
+        assertTrue(Files.size(log) > 100L * segmentSize, Files.size(log) + " bytes logged");
+
+        Path rebuilt = Files.createTempDirectory("rebuilt");
+        MappedOutputLog.writeFiles(log.toString(), rebuilt.toString(), segmentSize);
+        for (int i = 0; i < writers; i++) {
+            assertArrayEquals(memory.getPlayerOutput(i), Files.readAllBytes(rebuilt.resolve("player" + (i + 1) + "_output.txt")));
+            assertArrayEquals(memory.getDeckOutput(i), Files.readAllBytes(rebuilt.resolve("deck" + (i + 1) + "_output.txt")));
+        }
+        deleteTree(rebuilt);
+        Files.delete(log);
+    }
+
+    /**
+     * Deletes a directory along with every file in it.
+     */
+    private static void deleteTree(Path directory) throws IOException {
+        try (var listing = Files.walk(directory)) {
+            for (Path path : listing.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
 }